@@ -0,0 +1,397 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A Poly-compatible stand-in server, listening on the loopback interface.
+ * <p>
+ * The server answers from recorded responses in a fixture directory:
+ * <ul>
+ * <li>{@code /v1/assets} (the list query, whatever its parameters) with {@code list.json}.</li>
+ * <li>{@code /v1/assets/ID} with {@code assets/ID.json}.</li>
+ * <li>Any other path with the file at that path, for thumbnails, glTF files and their
+ * resources.</li>
+ * </ul>
+ * The string {@code {{BASE_URL}}} in JSON files is replaced with the base URL of the server, so
+ * the recorded asset URLs point back at it.  Latency, bandwidth and errors can be injected, with
+ * a seeded random source so runs are repeatable.
+ */
+public class LocalPolyServer {
+  private static final String TAG = "LocalPolyServer";
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // How long an idle keep-alive connection is kept open.
+  private static final int IDLE_TIMEOUT_MS = 30000;
+
+  private final File root;
+  private final Random random;
+  private final ExecutorService connectionExecutor = Executors.newCachedThreadPool();
+  private final Set<Socket> connections = Collections.synchronizedSet(new HashSet<>());
+
+  private volatile long latencyMillis;
+  private volatile long bytesPerSecond;
+  private volatile float errorRate;
+  private volatile int retryAfterSeconds = -1;
+
+  private ServerSocket serverSocket;
+  private String baseUrl;
+
+  /**
+   * Creates a server answering from the given fixture directory.
+   *
+   * @param root the fixture directory.
+   * @param seed the seed of the error injection.
+   */
+  public LocalPolyServer(File root, long seed) {
+    this.root = root;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Sets the delay added before each response.
+   */
+  public void setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
+  /**
+   * Limits the rate at which response bodies are sent.
+   *
+   * @param bytesPerSecond the rate, 0 for no limit.
+   */
+  public void setBytesPerSecond(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /**
+   * Sets the fraction of requests answered with a 503 error.
+   *
+   * @param errorRate         a value between 0 and 1.
+   * @param retryAfterSeconds the Retry-After sent with the errors, -1 for none.
+   */
+  public void setErrorRate(float errorRate, int retryAfterSeconds) {
+    this.errorRate = errorRate;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * Starts listening on a free port of the loopback interface.
+   */
+  public synchronized void start() throws IOException {
+    if (serverSocket != null) {
+      throw new IllegalStateException("LocalPolyServer is already started.");
+    }
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    baseUrl = "http://127.0.0.1:" + serverSocket.getLocalPort();
+    Thread acceptThread = new Thread(this::acceptLoop, TAG);
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+    Log.i(TAG, "Serving " + root + " at " + baseUrl);
+  }
+
+  /**
+   * Stops the server and closes its connections.
+   */
+  public synchronized void stop() {
+    if (serverSocket != null) {
+      try {
+        serverSocket.close();
+      } catch (IOException ex) {
+        Log.w(TAG, "Error closing server socket", ex);
+      }
+      serverSocket = null;
+    }
+    synchronized (connections) {
+      for (Socket connection : new ArrayList<>(connections)) {
+        try {
+          connection.close();
+        } catch (IOException ex) {
+          // Already closed.
+        }
+      }
+    }
+    connectionExecutor.shutdownNow();
+  }
+
+  /**
+   * Returns the base URL of the server, for example {@code http://127.0.0.1:34567}.
+   */
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  private void acceptLoop() {
+    ServerSocket socket = serverSocket;
+    while (socket != null && !socket.isClosed()) {
+      try {
+        Socket connection = socket.accept();
+        connectionExecutor.execute(() -> serve(connection));
+      } catch (IOException ex) {
+        if (!socket.isClosed()) {
+          Log.w(TAG, "Accept failed", ex);
+        }
+      }
+    }
+  }
+
+  // Serves the requests of a connection until it is closed.
+  private void serve(Socket connection) {
+    connections.add(connection);
+    try (Socket socket = connection) {
+      socket.setSoTimeout(IDLE_TIMEOUT_MS);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      boolean keepAlive = true;
+      while (keepAlive) {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) {
+          return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+          int colon = line.indexOf(':');
+          if (colon > 0) {
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                    line.substring(colon + 1).trim());
+          }
+        }
+        keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+        handle(requestLine, headers, out, keepAlive);
+      }
+    } catch (SocketException | SocketTimeoutException ex) {
+      // Closed by the client or by stop(), or idle for too long.
+    } catch (IOException ex) {
+      Log.w(TAG, "Error serving request", ex);
+    } finally {
+      connections.remove(connection);
+    }
+  }
+
+  private void handle(String requestLine, Map<String, String> headers, OutputStream out,
+                      boolean keepAlive) throws IOException {
+    String[] parts = requestLine.split(" ");
+    if (parts.length < 2) {
+      respond(out, 400, "text/plain", "Bad request".getBytes(UTF8), false, keepAlive, null);
+      return;
+    }
+    String method = parts[0];
+    boolean head = "HEAD".equals(method);
+    if (!head && !"GET".equals(method)) {
+      respond(out, 405, "text/plain", "Method not allowed".getBytes(UTF8), false, keepAlive,
+              null);
+      return;
+    }
+    sleep(latencyMillis);
+
+    boolean fail;
+    synchronized (random) {
+      fail = random.nextFloat() < errorRate;
+    }
+    if (fail) {
+      respond(out, 503, "text/plain", "Injected error".getBytes(UTF8), head, keepAlive,
+              retryAfterSeconds >= 0 ? Integer.toString(retryAfterSeconds) : null);
+      return;
+    }
+
+    File file = resolve(parts[1]);
+    if (file == null || !file.isFile()) {
+      respond(out, 404, "text/plain", "Not found".getBytes(UTF8), head, keepAlive, null);
+      return;
+    }
+    String contentType = contentType(file.getName());
+    byte[] body = readFile(file);
+    if (contentType.startsWith("application/json")) {
+      body = new String(body, UTF8).replace("{{BASE_URL}}", baseUrl).getBytes(UTF8);
+    }
+    String acceptEncoding = headers.get("accept-encoding");
+    boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip")
+            && (contentType.startsWith("application/json") || contentType.startsWith("model/"));
+    if (gzip) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+        gzipStream.write(body);
+      }
+      body = compressed.toByteArray();
+    }
+    writeHeaders(out, 200, contentType, body.length, keepAlive, gzip ? "gzip" : null, null);
+    if (!head) {
+      writeThrottled(out, body);
+    }
+    out.flush();
+  }
+
+  // Maps the request path to a fixture file, or null if it is outside of the fixtures.
+  private File resolve(String target) throws IOException {
+    int query = target.indexOf('?');
+    String path = URLDecoder.decode(query >= 0 ? target.substring(0, query) : target, "UTF-8");
+    if (path.equals("/v1/assets")) {
+      path = "/list.json";
+    } else if (path.startsWith("/v1/assets/")) {
+      path = "/assets/" + path.substring("/v1/assets/".length()) + ".json";
+    }
+    File file = new File(root, path).getCanonicalFile();
+    String rootPath = root.getCanonicalPath() + File.separator;
+    return file.getPath().startsWith(rootPath) ? file : null;
+  }
+
+  private void respond(OutputStream out, int status, String contentType, byte[] body,
+                       boolean head, boolean keepAlive, String retryAfter) throws IOException {
+    writeHeaders(out, status, contentType, body.length, keepAlive, null, retryAfter);
+    if (!head) {
+      out.write(body);
+    }
+    out.flush();
+  }
+
+  private static void writeHeaders(OutputStream out, int status, String contentType,
+                                   int contentLength, boolean keepAlive, String contentEncoding,
+                                   String retryAfter) throws IOException {
+    StringBuilder headers = new StringBuilder();
+    headers.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+    headers.append("Content-Type: ").append(contentType).append("\r\n");
+    headers.append("Content-Length: ").append(contentLength).append("\r\n");
+    if (contentEncoding != null) {
+      headers.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+    }
+    if (retryAfter != null) {
+      headers.append("Retry-After: ").append(retryAfter).append("\r\n");
+    }
+    headers.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+    headers.append("\r\n");
+    out.write(headers.toString().getBytes(UTF8));
+  }
+
+  // Writes the body at the configured rate.
+  private void writeThrottled(OutputStream out, byte[] body) throws IOException {
+    long rate = bytesPerSecond;
+    if (rate <= 0) {
+      out.write(body);
+      return;
+    }
+    int chunk = (int) Math.max(1024, Math.min(16384, rate / 20));
+    long start = System.nanoTime();
+    for (int offset = 0; offset < body.length; offset += chunk) {
+      int length = Math.min(chunk, body.length - offset);
+      out.write(body, offset, length);
+      out.flush();
+      long expectedMillis = (offset + length) * 1000L / rate;
+      long elapsedMillis = (System.nanoTime() - start) / 1000000;
+      sleep(expectedMillis - elapsedMillis);
+    }
+  }
+
+  private static String reason(int status) {
+    switch (status) {
+      case 200:
+        return "OK";
+      case 400:
+        return "Bad Request";
+      case 404:
+        return "Not Found";
+      case 405:
+        return "Method Not Allowed";
+      case 503:
+        return "Service Unavailable";
+      default:
+        return "Status";
+    }
+  }
+
+  private static String contentType(String name) {
+    String lower = name.toLowerCase(Locale.US);
+    if (lower.endsWith(".json")) {
+      return "application/json; charset=UTF-8";
+    } else if (lower.endsWith(".gltf")) {
+      return "model/gltf+json";
+    } else if (lower.endsWith(".glb")) {
+      return "model/gltf-binary";
+    } else if (lower.endsWith(".png")) {
+      return "image/png";
+    } else if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+      return "image/jpeg";
+    }
+    return "application/octet-stream";
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[16384];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  // Reads a CRLF terminated line, or returns null at the end of the stream.
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) >= 0) {
+      if (c == '\n') {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+          line.setLength(length - 1);
+        }
+        return line.toString();
+      }
+      line.append((char) c);
+    }
+    return line.length() > 0 ? line.toString() : null;
+  }
+
+  private static void sleep(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
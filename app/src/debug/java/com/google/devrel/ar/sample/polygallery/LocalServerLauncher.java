@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Starts the {@link LocalPolyServer}.  The server and the cleartext traffic it needs are only
+ * part of debug builds, release builds have a launcher that always fails.
+ */
+class LocalServerLauncher {
+  private LocalPolyServer server;
+
+  /**
+   * Starts the server.
+   *
+   * @param fixtures the directory of the recorded responses.
+   * @return the base URL of the server.
+   * @throws IOException if the server could not be started.
+   */
+  String start(File fixtures) throws IOException {
+    server = new LocalPolyServer(fixtures, 0);
+    try {
+      server.start();
+    } catch (IOException e) {
+      server = null;
+      throw e;
+    }
+    return server.getBaseUrl();
+  }
+
+  /**
+   * Stops the server, if it is running.
+   */
+  void stop() {
+    if (server != null) {
+      server.stop();
+      server = null;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Batched lookup of asset metadata.
+ * <p>
+ * Asset IDs requested within a short window are collected and fetched together, with at most a
+ * few requests running at once so they reuse the keep-alive connections of the HTTP stack.
+ * Concurrent requests for the same ID share one fetch, and the parsed assets are cached.
+ */
+public class AssetBatcher {
+  private static final String TAG = "AssetBatcher";
+
+  // How long requests are collected before the batch is sent.
+  private static final long WINDOW_MS = 20;
+
+  // The most requests running at once.
+  private static final int MAX_PARALLEL = 4;
+
+  // The number of assets kept in the cache.
+  private static final int CACHE_SIZE = 256;
+
+  private final PolyApi polyApi;
+
+  // The handler used for the batching window and the request callbacks.
+  private final Handler handler;
+
+  private final LruCache<String, JSONObject> cache = new LruCache<>(CACHE_SIZE);
+
+  // Guarded by this.
+  private final Map<String, CompletableFuture<JSONObject>> pending = new HashMap<>();
+  private final ArrayDeque<String> queue = new ArrayDeque<>();
+  private boolean flushScheduled;
+  private int running;
+
+  /**
+   * Creates a batcher.
+   *
+   * @param polyApi the API used to fetch the assets.
+   * @param handler a background handler, used for the batching window and the callbacks.
+   */
+  public AssetBatcher(PolyApi polyApi, Handler handler) {
+    this.polyApi = polyApi;
+    this.handler = handler;
+  }
+
+  /**
+   * Returns the asset with the given ID.  The asset is fetched with the other assets requested
+   * within the batching window, unless it is already cached or being fetched.
+   *
+   * @param assetId the ID of the asset.
+   * @return the future holding the asset JSON, see
+   * https://developers.google.com/poly/reference/api/rest/v1/assets
+   */
+  public CompletableFuture<JSONObject> getAsset(String assetId) {
+    JSONObject cached = cache.get(assetId);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    synchronized (this) {
+      CompletableFuture<JSONObject> future = pending.get(assetId);
+      if (future == null) {
+        future = new CompletableFuture<>();
+        pending.put(assetId, future);
+        queue.add(assetId);
+        if (!flushScheduled) {
+          flushScheduled = true;
+          handler.postDelayed(this::flush, WINDOW_MS);
+        }
+      }
+      return future;
+    }
+  }
+
+  /**
+   * Returns the assets with the given IDs, completing once all of them are fetched or failed.
+   * The assets that cannot be fetched, for example because they were deleted, are left out, the
+   * individual futures of {@link #getAsset(String)} hold their errors.
+   *
+   * @param assetIds the IDs of the assets.
+   * @return the future holding the fetched assets by ID, in the order of the IDs.
+   */
+  public CompletableFuture<Map<String, JSONObject>> getAssets(Collection<String> assetIds) {
+    Tracer.Span span = Tracer.begin("assets.batch", null);
+    long start = SystemClock.elapsedRealtime();
+    Map<String, CompletableFuture<JSONObject>> futures = new LinkedHashMap<>();
+    for (String assetId : assetIds) {
+      futures.put(assetId, getAsset(assetId));
+    }
+    return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+            .handle((ignored, throwable) -> {
+              span.end();
+              Log.d(TAG, "Fetched " + futures.size() + " assets in "
+                      + (SystemClock.elapsedRealtime() - start) + "ms");
+              Map<String, JSONObject> assets = new LinkedHashMap<>();
+              for (Map.Entry<String, CompletableFuture<JSONObject>> entry : futures.entrySet()) {
+                if (!entry.getValue().isCompletedExceptionally()) {
+                  assets.put(entry.getKey(), entry.getValue().join());
+                }
+              }
+              return assets;
+            });
+  }
+
+  /**
+   * Drops the cached assets.
+   */
+  public void clearCache() {
+    cache.evictAll();
+  }
+
+  /**
+   * Returns the number of cached assets.
+   */
+  public int getCachedCount() {
+    return cache.size();
+  }
+
+  // Sends the requests collected during the window.
+  private void flush() {
+    synchronized (this) {
+      flushScheduled = false;
+    }
+    dispatch();
+  }
+
+  // Starts queued requests while fewer than MAX_PARALLEL are running.
+  private synchronized void dispatch() {
+    while (running < MAX_PARALLEL && !queue.isEmpty()) {
+      running++;
+      fetch(queue.poll());
+    }
+  }
+
+  private void fetch(String assetId) {
+    polyApi.GetAsset(assetId, handler, new AsyncHttpRequest.CompletionListener() {
+      @Override
+      public void onHttpRequestSuccess(byte[] responseBody) {
+        try {
+          JSONObject asset = new JSONObject(new String(responseBody, Charset.forName("UTF-8")));
+          cache.put(assetId, asset);
+          finish(assetId).complete(asset);
+        } catch (JSONException e) {
+          finish(assetId).completeExceptionally(
+                  new IOException("JSON parsing error for asset " + assetId, e));
+        }
+      }
+
+      @Override
+      public void onHttpRequestFailure(int statusCode, String message, Exception exception) {
+        finish(assetId).completeExceptionally(exception != null ? exception
+                : new IOException(message));
+      }
+    });
+  }
+
+  // Marks the request as done, starts the next one, and returns the future of the asset.
+  private CompletableFuture<JSONObject> finish(String assetId) {
+    CompletableFuture<JSONObject> future;
+    synchronized (this) {
+      running--;
+      future = pending.remove(assetId);
+    }
+    dispatch();
+    return future;
+  }
+}
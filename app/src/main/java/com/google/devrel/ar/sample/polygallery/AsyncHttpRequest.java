@@ -15,25 +15,63 @@
 package com.google.devrel.ar.sample.polygallery;
 
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Asynchronous HTTP request.
  * <p>
  * This object sends an HTTP request asynchronously and calls the supplied callback when
- * the result of the request is available.
+ * the result of the request is available.  Transient failures are retried according to the
+ * {@link RetryPolicy}, and requests to a failing host are rejected by its {@link CircuitBreaker}.
+ * Responses may be gzip or deflate compressed, the listener always receives the decoded body.
  */
 public class AsyncHttpRequest {
   private static final String TAG = "PolySample";
 
+  // Default timeouts for establishing the connection and for each read, including the headers.
+  private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+  private static final int DEFAULT_READ_TIMEOUT_MS = 15000;
+
+  // Progress is reported each time this many more bytes are received.
+  private static final long PROGRESS_INTERVAL_BYTES = 64 * 1024;
+
+  // Runs the requests.  Idle threads are reused instead of starting a thread per request.
+  private static final ExecutorService requestExecutor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "HttpRequest");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // Aborts connections that are still running when their request's deadline passes.
+  private static final ScheduledExecutorService watchdog =
+          Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HttpDeadline");
+            thread.setDaemon(true);
+            return thread;
+          });
+
   // The URL of the request.
   private URL url;
 
@@ -46,6 +84,34 @@ public class AsyncHttpRequest {
   // If true, the request was started.
   private boolean requestStarted;
 
+  // The policy used to retry transient failures.
+  private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+
+  // The circuit breaker of the request, null to use the shared breaker of the host.
+  private CircuitBreaker circuitBreaker;
+
+  private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MS;
+  private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MS;
+
+  // The time budget of the whole request, including retries.  0 means no deadline.
+  private long timeoutMillis;
+
+  // The elapsedRealtime at which the request fails, set when the request is sent.
+  private long deadline;
+
+  // The HTTP method, GET or HEAD.
+  private String method = "GET";
+
+  // The listener for the download progress, may be null.
+  private ProgressListener progressListener;
+
+  // The Content-Length of the successful response, -1 if unknown.
+  private volatile long contentLength = -1;
+
+  // The trace span the request is part of, and the span of the request itself.
+  private Tracer.Span traceParent;
+  private Tracer.Span span;
+
   /**
    * Creates a new AsyncHttpRequest for the given URL.
    *
@@ -64,14 +130,102 @@ public class AsyncHttpRequest {
     }
   }
 
-  // Copies the entire contents of the given input stream to the given output stream.
-  private static void copyStream(InputStream inputStream, OutputStream outputStream)
-          throws IOException {
+  // Copies the entire contents of the given input stream to the given output stream, reporting
+  // the progress of the bytes received over the network.
+  private void copyStream(InputStream inputStream, OutputStream outputStream,
+                          CountingInputStream wireStream, long expected) throws IOException {
     byte[] buffer = new byte[16384];
     int bytesReadThisTime;
+    long reported = 0;
     while ((bytesReadThisTime = inputStream.read(buffer, 0, buffer.length)) > 0) {
       outputStream.write(buffer, 0, bytesReadThisTime);
+      if (wireStream.getCount() - reported >= PROGRESS_INTERVAL_BYTES) {
+        reported = wireStream.getCount();
+        postProgress(reported, expected);
+      }
     }
+    postProgress(wireStream.getCount(), expected);
+  }
+
+  private void postProgress(long received, long expected) {
+    ProgressListener progressListener = this.progressListener;
+    if (progressListener != null) {
+      handler.post(() -> progressListener.onHttpRequestProgress(received, expected));
+    }
+  }
+
+  /**
+   * Sets the HTTP method, GET or HEAD.  The body of a HEAD response is empty, its size is
+   * available from {@link #getContentLength()}.  Must be called before {@link #send()}.
+   */
+  public void setMethod(String method) {
+    this.method = method;
+  }
+
+  /**
+   * Sets the listener for the download progress, called on the handler of the request.
+   * Must be called before {@link #send()}.
+   */
+  public void setProgressListener(ProgressListener progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Returns the Content-Length of the successful response, or -1 if unknown.  For compressed
+   * responses, this is the compressed size.
+   */
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Sets the retry policy of this request.  Requests are GETs or HEADs, so they are safe to
+   * retry.
+   * Must be called before {@link #send()}.
+   *
+   * @param retryPolicy the policy, {@link RetryPolicy#NONE} to disable retries.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Sets the circuit breaker guarding this request, instead of the shared breaker of the host.
+   * Must be called before {@link #send()}.
+   */
+  public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Sets the connect and read timeouts used for each attempt.  The read timeout applies to
+   * waiting for the response headers and to each read of the body.
+   * Must be called before {@link #send()}.
+   */
+  public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * Sets the deadline of the request, measured from the call to {@link #send()}.  The deadline
+   * covers all attempts and backoff delays, and a connection still running when it passes is
+   * aborted, so the listener is called within this bound.
+   * Must be called before {@link #send()}.
+   *
+   * @param timeoutMillis the time budget in milliseconds, 0 for no deadline.
+   */
+  public void setDeadline(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Traces the request under the given span.  Must be called before {@link #send()}.
+   *
+   * @param parent the span the request is part of, or null to trace it on its own.
+   */
+  public void setTraceParent(Tracer.Span parent) {
+    this.traceParent = parent;
   }
 
   /**
@@ -85,42 +239,273 @@ public class AsyncHttpRequest {
       throw new IllegalStateException("AsyncHttpRequest can only be sent once.");
     }
     requestStarted = true;
-    new Thread(this::backgroundMain).start();
+    if (url == null) {
+      // The invalid URL was already reported by the constructor.
+      return;
+    }
+    span = Tracer.begin("http.get", traceParent);
+    if (timeoutMillis > 0) {
+      deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+    }
+    requestExecutor.execute(this::backgroundMain);
   }
 
   // Main method for background thread.
   private void backgroundMain() {
+    RequestMetrics.recordRequest();
+    CircuitBreaker breaker;
+    try {
+      breaker = circuitBreaker != null ? circuitBreaker : CircuitBreaker.forHost(url.getHost());
+    } catch (Exception ex) {
+      postFailure(0, "Exception while processing request to " + url, ex);
+      return;
+    }
+    for (int attempt = 1; ; attempt++) {
+      // The deadline is checked first, a trial request let through by the breaker must always
+      // report its outcome, or the host stays blocked.
+      if (remainingMillis() <= 0) {
+        postDeadlineExceeded();
+        return;
+      }
+      if (!breaker.allowRequest()) {
+        RequestMetrics.recordCircuitRejection();
+        String message = "Request to " + url + " not sent, too many failures from "
+                + url.getHost();
+        postFailure(0, message, new IOException(message));
+        return;
+      }
+      Attempt result = performAttempt();
+      if (result.notSent) {
+        breaker.onNotSent();
+        postDeadlineExceeded();
+        return;
+      }
+      if (result.body != null) {
+        breaker.onSuccess();
+        postSuccess(result.body);
+        return;
+      }
+
+      boolean retryable = retryPolicy.isRetryable(result.statusCode, result.exception);
+      if (retryable) {
+        breaker.onFailure();
+      } else {
+        // The host answered, the failure is specific to this request.
+        breaker.onSuccess();
+      }
+      long delay = -1;
+      if (retryable && attempt < retryPolicy.getMaxAttempts()) {
+        delay = retryPolicy.getDelayMillis(attempt, result.retryAfterMillis);
+      }
+      if (delay < 0) {
+        if (remainingMillis() <= 0) {
+          postDeadlineExceeded();
+        } else {
+          postFailure(result.statusCode, result.message, result.exception);
+        }
+        return;
+      }
+      if (delay >= remainingMillis()) {
+        // The next attempt would start after the deadline.
+        postDeadlineExceeded();
+        return;
+      }
+      RequestMetrics.recordRetry();
+      Log.w(TAG, result.message + ", retrying in " + delay + "ms");
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        postFailure(result.statusCode, result.message, ex);
+        return;
+      }
+    }
+  }
+
+  // Sends the request once.
+  private Attempt performAttempt() {
+    Tracer.Span attemptSpan = Tracer.begin("http.attempt", span);
+    Attempt result = new Attempt();
     HttpURLConnection connection = null;
+    ScheduledFuture<?> abort = null;
     try {
+      long start = SystemClock.elapsedRealtime();
+      long remaining = remainingMillis();
+      if (remaining <= 0) {
+        // The deadline passed since it was checked.  A timeout of 0 would mean no timeout.
+        result.notSent = true;
+        return result;
+      }
       connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout((int) Math.max(1, Math.min(connectTimeoutMillis, remaining)));
+      connection.setReadTimeout((int) Math.max(1, Math.min(readTimeoutMillis, remaining)));
+      // Setting the header explicitly turns off the transparent gzip handling of
+      // HttpURLConnection, the body is decoded in decodeStream.
+      connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+      connection.setRequestMethod(method);
+      if (deadline > 0) {
+        abort = watchdog.schedule(connection::disconnect, remaining, TimeUnit.MILLISECONDS);
+      }
       int responseCode = connection.getResponseCode();
+      long headersReceived = SystemClock.elapsedRealtime();
       if (responseCode != 200) {
-        postFailure(responseCode,
-                "Request to " + url + " failed with HTTP status code " + responseCode, null);
-        return;
+        result.statusCode = responseCode;
+        result.message = "Request to " + url + " failed with HTTP status code " + responseCode;
+        result.retryAfterMillis = parseRetryAfter(connection);
+        return result;
       }
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      copyStream(connection.getInputStream(), outputStream);
-      postSuccess(outputStream.toByteArray());
+      contentLength = connection.getContentLengthLong();
+      if ("HEAD".equals(method)) {
+        result.body = new byte[0];
+        return result;
+      }
+      CountingInputStream wireStream = new CountingInputStream(connection.getInputStream());
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+              contentLength > 0 && contentLength < Integer.MAX_VALUE
+                      ? (int) contentLength : 16384);
+      try (InputStream inputStream = decodeStream(wireStream, connection.getContentEncoding())) {
+        copyStream(inputStream, outputStream, wireStream, contentLength);
+      }
+      result.body = outputStream.toByteArray();
+      RequestMetrics.recordTransfer(wireStream.getCount(), result.body.length);
+      NetworkEstimator.recordTransfer(headersReceived - start, wireStream.getCount(),
+              SystemClock.elapsedRealtime() - headersReceived);
+    } catch (SocketTimeoutException ex) {
+      RequestMetrics.recordTimeout();
+      result.message = "Request to " + url + " timed out";
+      result.exception = ex;
     } catch (Exception ex) {
-      postFailure(0, "Exception while processing request to " + url, ex);
+      result.message = "Exception while processing request to " + url;
+      result.exception = ex;
     } finally {
+      if (abort != null) {
+        abort.cancel(false);
+      }
       if (connection != null) {
         connection.disconnect();
       }
+      attemptSpan.end();
+    }
+    return result;
+  }
+
+  // Wraps the stream to decode the given content encoding.
+  static InputStream decodeStream(InputStream inputStream, String contentEncoding)
+          throws IOException {
+    if (contentEncoding == null) {
+      return inputStream;
+    }
+    switch (contentEncoding.trim().toLowerCase(Locale.US)) {
+      case "gzip":
+      case "x-gzip":
+        return new GZIPInputStream(inputStream, 16384);
+      case "deflate":
+        // Deflate should be zlib wrapped, but some servers send raw deflate data.  A zlib stream
+        // starts with a two byte header: 8 as compression method and a window of at most 32KB
+        // in the first byte, and a check making the header a multiple of 31.
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, 16384);
+        buffered.mark(2);
+        int cmf = buffered.read();
+        int flg = buffered.read();
+        buffered.reset();
+        boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && (cmf >> 4) <= 7
+                && (cmf * 256 + flg) % 31 == 0;
+        return new InflaterInputStream(buffered, new Inflater(!zlib), 16384);
+      default:
+        return inputStream;
+    }
+  }
+
+  // Returns the time left before the deadline, Long.MAX_VALUE if there is no deadline.
+  private long remainingMillis() {
+    return deadline > 0 ? deadline - SystemClock.elapsedRealtime() : Long.MAX_VALUE;
+  }
+
+  // Posts the failure of a request that ran out of time.
+  private void postDeadlineExceeded() {
+    RequestMetrics.recordDeadlineExceeded();
+    String message = "Request to " + url + " timed out after " + timeoutMillis + "ms";
+    postFailure(0, message, new TimeoutException(message));
+  }
+
+  // Returns the Retry-After delay of the response in milliseconds, or -1 if there is none.
+  // The header is either a number of seconds or an HTTP date.
+  private static long parseRetryAfter(HttpURLConnection connection) {
+    String value = connection.getHeaderField("Retry-After");
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Math.max(0, Long.parseLong(value.trim()) * 1000);
+    } catch (NumberFormatException ex) {
+      long date = connection.getHeaderFieldDate("Retry-After", -1);
+      return date < 0 ? -1 : Math.max(0, date - System.currentTimeMillis());
     }
   }
 
   // Posts a failure callback to the listener.
   private void postFailure(final int statusCode, final String message, final Exception exception) {
+    RequestMetrics.recordFailure();
+    span.end();
     handler.post(() -> listener.onHttpRequestFailure(statusCode, message, exception));
   }
 
   // Posts a success callback to the listener.
   private void postSuccess(final byte[] responseBody) {
+    RequestMetrics.recordSuccess();
+    span.end();
     handler.post(() -> listener.onHttpRequestSuccess(responseBody));
   }
 
+  // Counts the bytes read from the wrapped stream.
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = super.read(buffer, offset, length);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+
+  // The outcome of a single attempt.  Either body is set, or the failure fields are.
+  private static class Attempt {
+    // True if the attempt was not sent because the deadline had passed.
+    boolean notSent;
+    byte[] body;
+    int statusCode;
+    String message;
+    Exception exception;
+    long retryAfterMillis = -1;
+  }
+
   /**
    * Listener for HTTP request completion.
    */
@@ -141,4 +526,18 @@ public class AsyncHttpRequest {
      */
     void onHttpRequestFailure(int statusCode, String message, Exception exception);
   }
+
+  /**
+   * Listener for the download progress of the response body.
+   */
+  public interface ProgressListener {
+    /**
+     * Called as the body is received, and once it is complete.  When an attempt is retried,
+     * the progress starts over.
+     *
+     * @param bytesReceived the number of bytes received over the network.
+     * @param bytesExpected the Content-Length of the response, or -1 if unknown.
+     */
+    void onHttpRequestProgress(long bytesReceived, long bytesExpected);
+  }
 }
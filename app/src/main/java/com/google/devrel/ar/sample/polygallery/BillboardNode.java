@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+
+/**
+ * Node kept facing the camera by the {@link Billboarder}.  It remembers the state its rotation
+ * was last computed for, so the rotation is only recomputed when something moved.
+ */
+public class BillboardNode extends Node {
+  // The camera and node positions, and the world rotation set, at the last update.
+  Vector3 lastCameraPosition;
+  Vector3 lastPosition;
+  Quaternion lastRotation;
+
+  /**
+   * Forgets the last update, so the next pass rotates the node.
+   */
+  void invalidateBillboard() {
+    lastCameraPosition = null;
+  }
+}
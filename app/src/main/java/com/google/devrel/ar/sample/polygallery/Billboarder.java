@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the info cards and the level of detail billboards facing the camera.
+ * <p>
+ * Setting the world rotation of a node marks its transform dirty, so the rotation of a node is
+ * only updated when the camera or the node moved past a position threshold and the direction to
+ * the camera turned past an angle threshold, or when something else rotated the node.
+ */
+public class Billboarder {
+  // Movement, in meters, below which the camera and the nodes are considered still.
+  private static final float POSITION_THRESHOLD = 0.01f;
+
+  // Change of direction, in degrees, below which the rotation is kept.
+  private static final float ANGLE_THRESHOLD_DEGREES = 1.5f;
+
+  private static final float POSITION_THRESHOLD_SQUARED = POSITION_THRESHOLD * POSITION_THRESHOLD;
+  private static final float COS_ANGLE_THRESHOLD =
+          (float) Math.cos(Math.toRadians(ANGLE_THRESHOLD_DEGREES));
+  // The dot product of two unit quaternions is the cosine of half the angle between them.
+  private static final float COS_HALF_ANGLE_THRESHOLD =
+          (float) Math.cos(Math.toRadians(ANGLE_THRESHOLD_DEGREES) / 2);
+
+  private long rotations;
+  private long skips;
+
+  /**
+   * Rotates the active cards and billboards of the placements to face the camera.
+   *
+   * @param cameraPosition the world position of the camera.
+   * @param placements     the placements to update.
+   */
+  public void update(Vector3 cameraPosition, List<Placement> placements) {
+    for (Placement placement : placements) {
+      face(placement.getInfoCard(), cameraPosition);
+      face(placement.getBillboardNode(), cameraPosition);
+    }
+  }
+
+  /**
+   * Returns the number of node rotations applied and of node updates skipped because nothing
+   * moved enough, for logging.
+   */
+  public String summary() {
+    return String.format(Locale.US, "billboardRotations=%d billboardSkips=%d", rotations, skips);
+  }
+
+  // Rotates the node to face the camera if needed.
+  private void face(BillboardNode node, Vector3 cameraPosition) {
+    if (node == null || !node.isActive()) {
+      return;
+    }
+    Vector3 position = node.getWorldPosition();
+    if (node.lastCameraPosition != null && !rotatedElsewhere(node)) {
+      if (distanceSquared(cameraPosition, node.lastCameraPosition) < POSITION_THRESHOLD_SQUARED
+              && distanceSquared(position, node.lastPosition) < POSITION_THRESHOLD_SQUARED) {
+        skips++;
+        return;
+      }
+      Vector3 lastDirection = Vector3.subtract(node.lastCameraPosition, node.lastPosition);
+      Vector3 direction = Vector3.subtract(cameraPosition, position);
+      if (Vector3.dot(lastDirection.normalized(), direction.normalized()) > COS_ANGLE_THRESHOLD) {
+        skips++;
+        return;
+      }
+    }
+    Vector3 direction = Vector3.subtract(cameraPosition, position);
+    if (direction.lengthSquared() == 0) {
+      return;
+    }
+    Quaternion rotation = Quaternion.lookRotation(direction, Vector3.up());
+    node.setWorldRotation(rotation);
+    node.lastCameraPosition = cameraPosition;
+    node.lastPosition = position;
+    node.lastRotation = rotation;
+    rotations++;
+  }
+
+  // Returns true if the world rotation of the node is no longer the one last set, for example
+  // because the model it is attached to was rotated.
+  private static boolean rotatedElsewhere(BillboardNode node) {
+    Quaternion current = node.getWorldRotation();
+    Quaternion last = node.lastRotation;
+    float dot = current.x * last.x + current.y * last.y + current.z * last.z + current.w * last.w;
+    return Math.abs(dot) < COS_HALF_ANGLE_THRESHOLD;
+  }
+
+  private static float distanceSquared(Vector3 a, Vector3 b) {
+    float dx = a.x - b.x;
+    float dy = a.y - b.y;
+    float dz = a.z - b.z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+}
@@ -0,0 +1,152 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-host circuit breaker.
+ * <p>
+ * After a number of consecutive transient failures the circuit opens and requests to the host
+ * fail immediately.  Once the open period has passed, a single trial request is let through.  If
+ * it succeeds the circuit closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+  private static final int FAILURE_THRESHOLD = 5;
+  private static final long OPEN_MILLIS = 15000;
+
+  private static final Map<String, CircuitBreaker> breakers = new HashMap<>();
+
+  // The clock of the breakers created by forHost.
+  private static LongSupplier hostClock = SystemClock::elapsedRealtime;
+
+  private enum State {CLOSED, OPEN, HALF_OPEN}
+
+  private final int failureThreshold;
+  private final long openMillis;
+  private final LongSupplier clock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+
+  /**
+   * Creates a circuit breaker.
+   *
+   * @param failureThreshold the number of consecutive failures opening the circuit.
+   * @param openMillis       how long the circuit stays open before a trial request.
+   * @param clock            returns the current time in milliseconds.
+   */
+  public CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the circuit breaker for the host, creating it if needed.
+   */
+  public static CircuitBreaker forHost(String host) {
+    synchronized (breakers) {
+      CircuitBreaker breaker = breakers.get(host);
+      if (breaker == null) {
+        breaker = new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MILLIS, hostClock);
+        breakers.put(host, breaker);
+      }
+      return breaker;
+    }
+  }
+
+  /**
+   * Sets the clock of the host breakers and forgets the state of all hosts.
+   *
+   * @param clock returns the current time in milliseconds.
+   */
+  public static void setHostClock(LongSupplier clock) {
+    synchronized (breakers) {
+      hostClock = clock;
+      breakers.clear();
+    }
+  }
+
+  /**
+   * Forgets the state of all hosts.
+   */
+  public static void resetAll() {
+    synchronized (breakers) {
+      breakers.clear();
+    }
+  }
+
+  /**
+   * Returns true if a request may be sent.  When the open period is over, this lets a single
+   * trial request through and rejects the others until its result is reported.
+   */
+  public synchronized boolean allowRequest() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (clock.getAsLong() - openedAt >= openMillis) {
+          state = State.HALF_OPEN;
+          return true;
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Reports a request that reached the host and did not fail transiently.
+   */
+  public synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    state = State.CLOSED;
+  }
+
+  /**
+   * Reports a transient failure.
+   */
+  public synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = clock.getAsLong();
+    }
+  }
+
+  /**
+   * Reports a request that was let through but not sent, for example because its deadline
+   * passed.  If it was the trial request, the next request becomes the trial.
+   */
+  public synchronized void onNotSent() {
+    if (state == State.HALF_OPEN) {
+      state = State.OPEN;
+      openedAt = clock.getAsLong() - openMillis;
+    }
+  }
+
+  /**
+   * Returns true if requests are currently rejected.
+   */
+  public synchronized boolean isOpen() {
+    return state != State.CLOSED;
+  }
+}
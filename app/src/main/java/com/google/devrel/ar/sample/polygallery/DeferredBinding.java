@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Delivers an asynchronously loaded value to a recycled view, dropping late completions.
+ * <p>
+ * Each bind and unbind starts a new generation.  A callback only delivers its value if the
+ * generation it was registered in is still current, which is the only guard: the callback stays
+ * registered on the future, which may be shared, until it completes, and then does nothing.
+ * All methods must be called on the thread the delivery executor runs on.
+ *
+ * @param <T> the type of the value.
+ */
+class DeferredBinding<T> {
+  // Incremented on each bind and unbind.
+  private int generation;
+
+  // True while the callback of the current generation has not delivered its value.
+  private boolean pending;
+
+  /**
+   * Binds the value.  If it is already available it is delivered right away, otherwise null is
+   * delivered first and the value once the future completes on the executor.
+   *
+   * @param value    the future holding the value, may be null.
+   * @param executor delivers the completed value.
+   * @param target   receives the value.
+   */
+  void bind(CompletableFuture<T> value, Executor executor, Consumer<T> target) {
+    unbind();
+    if (value == null) {
+      target.accept(null);
+      return;
+    }
+    if (value.isDone() && !value.isCompletedExceptionally()) {
+      target.accept(value.join());
+      return;
+    }
+    target.accept(null);
+    final int bound = generation;
+    pending = true;
+    value.thenAcceptAsync(result -> {
+      if (bound == generation) {
+        pending = false;
+        target.accept(result);
+      }
+    }, executor);
+  }
+
+  /**
+   * Drops the pending delivery, if any.  This does not affect the future itself, which may be
+   * shared with other bindings.
+   */
+  void unbind() {
+    generation++;
+    pending = false;
+  }
+
+  /**
+   * Returns true if the current generation is waiting for its value.
+   */
+  boolean isPending() {
+    return pending;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+/**
+ * Adapts how much is fetched ahead and how it is decoded to the network conditions estimated by
+ * {@link NetworkEstimator}.  On a slow link, fewer thumbnails are requested at once and ahead of
+ * the visible items, so they do not compete as much with the model the user is loading.
+ */
+public final class FetchPolicy {
+  /**
+   * The network conditions.
+   */
+  public enum Quality {
+    SLOW, MODERATE, FAST
+  }
+
+  // Below this throughput, or above this latency, the network is slow.
+  private static final long SLOW_THROUGHPUT = 150 * 1024;
+  private static final long SLOW_LATENCY_MS = 600;
+
+  // Above this throughput and below this latency, the network is fast.
+  private static final long FAST_THROUGHPUT = 1024 * 1024;
+  private static final long FAST_LATENCY_MS = 150;
+
+  private FetchPolicy() {
+  }
+
+  /**
+   * Returns the current network conditions.  Until there are estimates, the network is
+   * considered moderate.
+   */
+  public static Quality getQuality() {
+    long throughput = NetworkEstimator.getThroughputBytesPerSecond();
+    long latency = NetworkEstimator.getLatencyMillis();
+    if ((throughput >= 0 && throughput < SLOW_THROUGHPUT) || latency > SLOW_LATENCY_MS) {
+      return Quality.SLOW;
+    }
+    if (throughput >= FAST_THROUGHPUT && latency >= 0 && latency < FAST_LATENCY_MS) {
+      return Quality.FAST;
+    }
+    return Quality.MODERATE;
+  }
+
+  /**
+   * Returns the number of gallery items after the bound one whose thumbnails are fetched ahead.
+   */
+  public static int getPrefetchDepth() {
+    switch (getQuality()) {
+      case SLOW:
+        return 0;
+      case FAST:
+        return 10;
+      default:
+        return 4;
+    }
+  }
+
+  /**
+   * Returns the most background requests, such as thumbnails and asset metadata, run at once.
+   */
+  public static int getMaxParallelRequests() {
+    switch (getQuality()) {
+      case SLOW:
+        return 2;
+      case FAST:
+        return 6;
+      default:
+        return 4;
+    }
+  }
+
+  /**
+   * Returns the largest width or height thumbnails are decoded to.
+   */
+  public static int getThumbnailMaxDimension() {
+    switch (getQuality()) {
+      case SLOW:
+        return 128;
+      case FAST:
+        return 512;
+      default:
+        return 256;
+    }
+  }
+
+  /**
+   * Returns the power of two sample size used to decode an image of the given size so it fits
+   * the thumbnail dimension.
+   */
+  public static int getThumbnailSampleSize(int width, int height) {
+    int maxDimension = getThumbnailMaxDimension();
+    int sampleSize = 1;
+    while (Math.max(width, height) / (sampleSize * 2) >= maxDimension) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs main thread work within a time budget per display frame.
+ * <p>
+ * Work such as attaching models, swapping the gallery adapter and painting thumbnails tends to
+ * arrive in bursts.  Instead of running it all at once and dropping AR frames, it is queued and
+ * run from the Choreographer frame callback, highest priority first, until the budget of the
+ * frame is used.  The rest is carried over to the next frame.  At least one task runs per frame,
+ * so queued work always makes progress.
+ */
+public class FrameScheduler implements Choreographer.FrameCallback {
+  private static final String TAG = "FrameScheduler";
+
+  /**
+   * The priorities of the tasks, highest first.
+   */
+  public enum Priority {
+    // Attaching a loaded model to the scene.
+    ATTACH,
+    // Updating the gallery with new results.
+    GALLERY,
+    // Showing a loaded thumbnail.
+    THUMBNAIL
+  }
+
+  // The time per frame given to queued tasks.
+  private static final long BUDGET_NANOS = 4_000_000;
+
+  private static final FrameScheduler instance = new FrameScheduler(BUDGET_NANOS);
+
+  private final long budgetNanos;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  // Guarded by this.
+  private final ArrayDeque<Runnable>[] queues;
+  private boolean frameScheduled;
+
+  // Only updated on the main thread.
+  private volatile long tasksRun;
+  private volatile long framesOverBudget;
+  private volatile long tasksDeferred;
+  private volatile long tasksFailed;
+
+  @SuppressWarnings("unchecked")
+  private FrameScheduler(long budgetNanos) {
+    this.budgetNanos = budgetNanos;
+    queues = new ArrayDeque[Priority.values().length];
+    for (int i = 0; i < queues.length; i++) {
+      queues[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Returns the scheduler of the main thread.
+   */
+  public static FrameScheduler getInstance() {
+    return instance;
+  }
+
+  /**
+   * Queues a task to run on the main thread in an upcoming frame.  Can be called from any
+   * thread.
+   */
+  public void post(Priority priority, Runnable task) {
+    boolean schedule;
+    synchronized (this) {
+      queues[priority.ordinal()].add(task);
+      schedule = !frameScheduled;
+      frameScheduled = true;
+    }
+    if (schedule) {
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        scheduleFrame();
+      } else {
+        mainHandler.post(this::scheduleFrame);
+      }
+    }
+  }
+
+  /**
+   * Returns an executor queuing its tasks with the given priority, for use with the async
+   * methods of CompletableFuture.
+   */
+  public Executor executor(Priority priority) {
+    return task -> post(priority, task);
+  }
+
+  // Must be called on the main thread, the Choreographer is per thread.
+  private void scheduleFrame() {
+    Choreographer.getInstance().postFrameCallback(this);
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    long start = System.nanoTime();
+    boolean first = true;
+    while (true) {
+      Runnable task;
+      synchronized (this) {
+        ArrayDeque<Runnable> queue = nextQueue();
+        if (queue == null) {
+          frameScheduled = false;
+          return;
+        }
+        if (!first && System.nanoTime() - start >= budgetNanos) {
+          // Carry the rest over to the next frame.
+          framesOverBudget++;
+          tasksDeferred += size();
+          break;
+        }
+        task = queue.poll();
+      }
+      first = false;
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        // A failing task must not stop the others, or take the app down with it.
+        tasksFailed++;
+        Log.e(TAG, "Scheduled task failed", e);
+      }
+      tasksRun++;
+    }
+    scheduleFrame();
+  }
+
+  // Returns the queue of the highest priority task, or null if there is none.  Guarded by this.
+  private ArrayDeque<Runnable> nextQueue() {
+    for (ArrayDeque<Runnable> queue : queues) {
+      if (!queue.isEmpty()) {
+        return queue;
+      }
+    }
+    return null;
+  }
+
+  // Guarded by this.
+  private int size() {
+    int size = 0;
+    for (ArrayDeque<Runnable> queue : queues) {
+      size += queue.size();
+    }
+    return size;
+  }
+
+  /**
+   * The number of frames in which queued work was carried over to the next frame, because
+   * running it would have gone over the budget.
+   */
+  public long getFramesOverBudget() {
+    return framesOverBudget;
+  }
+
+  /**
+   * The total number of tasks carried over to a later frame.
+   */
+  public long getTasksDeferred() {
+    return tasksDeferred;
+  }
+
+  /**
+   * Returns a one line summary of the counters, suitable for logging.
+   */
+  public String summary() {
+    return String.format(Locale.US,
+            "tasksRun=%d framesOverBudget=%d tasksDeferred=%d tasksFailed=%d",
+            tasksRun, framesOverBudget, tasksDeferred, tasksFailed);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.google.ar.sceneform.FrameTime;
+
+import java.util.Locale;
+
+/**
+ * Collects frame times and memory use against the number of placed models and logs them
+ * periodically.
+ */
+public class FrameStats {
+  private static final String TAG = "FrameStats";
+
+  // Number of frames summarized in each log line.
+  private static final int WINDOW = 120;
+
+  private int frames;
+  private float totalSeconds;
+  private float maxSeconds;
+
+  /**
+   * Records a frame.
+   *
+   * @param frameTime           the frame time passed to the update listener.
+   * @param placements          the number of models placed in the scene.
+   * @param distinctRenderables the number of distinct model renderables used by the placements.
+   */
+  public void onFrame(FrameTime frameTime, int placements, int distinctRenderables) {
+    float delta = frameTime.getDeltaSeconds();
+    frames++;
+    totalSeconds += delta;
+    maxSeconds = Math.max(maxSeconds, delta);
+    if (frames < WINDOW) {
+      return;
+    }
+    Runtime runtime = Runtime.getRuntime();
+    long javaHeap = runtime.totalMemory() - runtime.freeMemory();
+    Log.d(TAG, String.format(Locale.US,
+            "placements=%d renderables=%d frame avg=%.1fms max=%.1fms"
+                    + " javaHeap=%dKB nativeHeap=%dKB",
+            placements, distinctRenderables,
+            totalSeconds * 1000 / frames, maxSeconds * 1000,
+            javaHeap / 1024, Debug.getNativeHeapAllocatedSize() / 1024));
+    frames = 0;
+    totalSeconds = 0;
+    maxSeconds = 0;
+  }
+}
@@ -31,8 +31,10 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Recycler view adapter for displaying thumbnails of Poly models.
@@ -40,23 +42,34 @@ import java.util.List;
 class GalleryAdapter extends RecyclerView.Adapter {
     private static final String TAG = "GalleryAdapter";
 
-    private final List<GalleryItem> items;
+    // Payload used to rebind only the selection state of a holder.
+    static final Object SELECTION_PAYLOAD = new Object();
+
+    private final GalleryResults results;
     private int selected;
 
-    public GalleryAdapter(List<GalleryItem> items) {
-        this.items = items;
+    // Used to deliver thumbnails on the main thread, within the frame budget.
+    private final Executor thumbnailExecutor =
+            FrameScheduler.getInstance().executor(FrameScheduler.Priority.THUMBNAIL);
+
+    public GalleryAdapter(GalleryResults results) {
+        this.results = results;
         selected = -1;
+        results.setInUse(this::isInUse);
+        // The ids are derived from the asset keys, so they stay the same across result swaps.
+        setHasStableIds(true);
     }
 
     /**
-     * Parses the response from the Poly API and creates GalleryItems for  the results.
+     * Parses the response from the Poly API into a result store.  The GalleryItems are created
+     * when they are shown.
      *
      * @param responseBody            - the response data.
      * @param backgroundThreadHandler - a background handler thread used to load thumbnails.
-     * @return List of gallery items.
+     * @return the results.
      * @throws IOException if there is a problem.
      */
-    public static List<GalleryItem> parseListResults(
+    public static GalleryResults parseListResults(
             byte[] responseBody, Handler backgroundThreadHandler) throws IOException {
         Log.d(TAG, "Got asset response (" + responseBody.length + " bytes). Parsing.");
         String assetBody = new String(responseBody, Charset.forName("UTF-8"));
@@ -65,7 +78,7 @@ class GalleryAdapter extends RecyclerView.Adapter {
         try {
             JSONObject response = new JSONObject(assetBody);
 
-            List<GalleryItem> items = new ArrayList<>();
+            GalleryResults results = new GalleryResults(backgroundThreadHandler);
 
             // See https://developers.google.com/poly/reference/api/rest/v1/assets/list
             // for available fields.
@@ -75,34 +88,10 @@ class GalleryAdapter extends RecyclerView.Adapter {
             JSONArray assets = response.getJSONArray("assets");
 
             for (int i = 0; i < assets.length(); i++) {
-                JSONObject obj = assets.getJSONObject(i);
-                // Use the name as the key.
-                GalleryItem item = new GalleryItem(
-                        obj.getString("name"));
-                item.setDisplayName(obj.getString("displayName"));
-                item.setAuthorInfo(obj.getString("authorName"), obj.getString("license"));
-
-                if (obj.has("description")) {
-                    item.setDescription(obj.getString("description"));
-                }
-
-                String url = obj.getJSONObject("thumbnail").getString("url");
-                item.setThumbnail(url);
-                item.loadThumbnail(backgroundThreadHandler);
-
-                // Find the glTF URL.
-                JSONArray formats = obj.getJSONArray("formats");
-                for (int j = 0; j < formats.length(); j++) {
-                    JSONObject format = formats.getJSONObject(j);
-                    if (format.getString("formatType").equals("GLTF2")) {
-                        item.setModelUrl(format.getJSONObject("root").getString("url"));
-                        break;
-                    }
-                }
-                items.add(item);
+                addAsset(results, assets.getJSONObject(i));
             }
 
-            return items;
+            return results;
 
         } catch (JSONException e) {
             Log.e(TAG, "JSON parsing error while processing response: " + e);
@@ -110,6 +99,58 @@ class GalleryAdapter extends RecyclerView.Adapter {
         }
     }
 
+    /**
+     * Creates a result store from asset JSON objects, such as the ones fetched by ID.
+     *
+     * @param assets                  - the assets, in the order they are shown.
+     * @param backgroundThreadHandler - a background handler thread used to load thumbnails.
+     * @return the results.
+     * @throws IOException if there is a problem.
+     */
+    public static GalleryResults parseAssets(
+            Collection<JSONObject> assets, Handler backgroundThreadHandler) throws IOException {
+        try {
+            GalleryResults results = new GalleryResults(backgroundThreadHandler);
+            for (JSONObject obj : assets) {
+                addAsset(results, obj);
+            }
+            return results;
+        } catch (JSONException e) {
+            Log.e(TAG, "JSON parsing error while processing assets: " + e);
+            throw new IOException("JSON parsing error", e);
+        }
+    }
+
+    // Adds an asset to the results, see
+    // https://developers.google.com/poly/reference/api/rest/v1/assets for the fields.
+    private static void addAsset(GalleryResults results, JSONObject obj) throws JSONException {
+        String description = obj.has("description") ? obj.getString("description") : null;
+        String thumbnail = obj.getJSONObject("thumbnail").getString("url");
+
+        // Find the glTF URL.
+        String modelUrl = null;
+        String[] resourceUrls = new String[0];
+        JSONArray formats = obj.getJSONArray("formats");
+        for (int j = 0; j < formats.length(); j++) {
+            JSONObject format = formats.getJSONObject(j);
+            if (format.getString("formatType").equals("GLTF2")) {
+                modelUrl = format.getJSONObject("root").getString("url");
+                JSONArray resources = format.optJSONArray("resources");
+                if (resources != null) {
+                    resourceUrls = new String[resources.length()];
+                    for (int k = 0; k < resources.length(); k++) {
+                        resourceUrls[k] = resources.getJSONObject(k).getString("url");
+                    }
+                }
+                break;
+            }
+        }
+        // Use the name as the key.
+        results.add(obj.getString("name"), obj.getString("displayName"),
+                obj.getString("authorName"), obj.getString("license"),
+                description, thumbnail, modelUrl, resourceUrls);
+    }
+
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -129,20 +170,156 @@ class GalleryAdapter extends RecyclerView.Adapter {
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        if (holder.getItemId() != position) {
-            ((GalleryItemHolder) holder).setItem(items.get(position));
-            items.get(position).setViewHolder(holder);
-            items.get(position).getThumbnailHolder().thenAccept(bitmap -> {
-                ImageView imageView = (ImageView) holder.itemView;
-                imageView.setImageBitmap(bitmap);
-                imageView.requestLayout();
-            });
+        GalleryItem item = results.getItem(position);
+        GalleryItemHolder itemHolder = (GalleryItemHolder) holder;
+        itemHolder.setItem(item, position == selected);
+        item.setViewHolder(holder);
+        itemHolder.setThumbnail(item.getThumbnailHolder(), thumbnailExecutor);
+
+        // Start loading the thumbnails of the next items, as far ahead as the network allows.
+        int prefetchEnd = Math.min(position + 1 + FetchPolicy.getPrefetchDepth(), results.size());
+        for (int i = position + 1; i < prefetchEnd; i++) {
+            results.getItem(i);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        ((GalleryItemHolder) holder).unbind();
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        if (payloads.contains(SELECTION_PAYLOAD)) {
+            // Only the selection changed, leave the item and thumbnail alone.
+            ((GalleryItemHolder) holder).setSelectedState(position == selected);
+        } else {
+            onBindViewHolder(holder, position);
         }
     }
 
     @Override
     public int getItemCount() {
-        return items.size();
+        return results.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableId(results.getKey(position));
+    }
+
+    // Returns the 64-bit FNV-1a hash of the key.  String.hashCode is only 32 bits, so distinct
+    // assets would be more likely to share an id.
+    private static long stableId(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of items with a loaded thumbnail.  Items are created when shown, so
+     * only those are considered here and below.
+     */
+    public int getThumbnailCount() {
+        int count = 0;
+        for (GalleryItem item : results.getCreatedItems()) {
+            if (item.getThumbnailBytes() > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the size of the loaded thumbnails.
+     */
+    public long getThumbnailBytes() {
+        long bytes = 0;
+        for (GalleryItem item : results.getCreatedItems()) {
+            bytes += item.getThumbnailBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Releases the thumbnails of the items that are not bound to a view.  They are loaded again
+     * when the items are scrolled back into view.
+     */
+    public void releaseOffscreenThumbnails() {
+        for (GalleryItem item : results.getCreatedItems()) {
+            if (!isBound(item)) {
+                item.releaseThumbnail();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of items with a loaded renderable.
+     */
+    public int getRenderableCount() {
+        int count = 0;
+        for (GalleryItem item : results.getCreatedItems()) {
+            if (item.hasRenderable()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Releases the renderables of the items that are not placed in the scene.
+     *
+     * @param placedKeys the keys of the placed assets.
+     */
+    public void releaseRenderables(Set<String> placedKeys) {
+        for (GalleryItem item : results.getCreatedItems()) {
+            if (!placedKeys.contains(item.getKey())) {
+                item.releaseRenderable();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of items created for the results.
+     */
+    public int getCreatedItemCount() {
+        return results.getCreatedItems().size();
+    }
+
+    /**
+     * Drops the items that are not on screen, selected, loading or placed in the scene.  They
+     * are created again from the stored results when they are scrolled back into view.
+     *
+     * @param placedKeys the keys of the placed assets.
+     */
+    public void releaseUnusedItems(Set<String> placedKeys) {
+        results.releaseItems(item -> isInUse(item) || placedKeys.contains(item.getKey()));
+    }
+
+    // Returns true if the item is on screen, selected, loading or has a renderable, which is
+    // the case of the placed models.  This must not create items.
+    private boolean isInUse(GalleryItem item) {
+        return isBound(item)
+                || item.isLoading()
+                || item.hasRenderable()
+                || (selected >= 0 && results.indexOf(item.getKey()) == selected);
+    }
+
+    // Returns true if the item is shown by a view holder.
+    private static boolean isBound(GalleryItem item) {
+        RecyclerView.ViewHolder holder = item.getViewHolder();
+        return holder != null && ((GalleryItemHolder) holder).getItem() == item;
+    }
+
+    /**
+     * Returns the position of the item, or -1 if the item is not in this adapter.
+     */
+    public int getPosition(GalleryItem item) {
+        return item == null ? -1 : results.indexOf(item.getKey());
     }
 
     /**
@@ -151,7 +328,7 @@ class GalleryAdapter extends RecyclerView.Adapter {
      * @return null if nothing is selected.
      */
     public GalleryItem getSelected() {
-        return selected >= 0 ? items.get(selected) : null;
+        return selected >= 0 ? results.getItem(selected) : null;
     }
 
     /**
@@ -159,6 +336,31 @@ class GalleryAdapter extends RecyclerView.Adapter {
      * otherwise it is ignored.
      */
     public void setSelected(GalleryItem item) {
-        selected = item == null ? -1 : items.indexOf(item);
+        int position = getPosition(item);
+        if (item != null && position < 0) {
+            return;
+        }
+        if (position == selected) {
+            return;
+        }
+        int previous = selected;
+        selected = position;
+        if (item != null) {
+            // Know the size of the model before it is placed.
+            item.estimateSize();
+        }
+        if (previous >= 0) {
+            notifyItemChanged(previous, SELECTION_PAYLOAD);
+        }
+        if (selected >= 0) {
+            notifyItemChanged(selected, SELECTION_PAYLOAD);
+        }
+    }
+
+    /**
+     * Selects the item, or clears the selection if the item is already selected.
+     */
+    public void toggleSelected(GalleryItem item) {
+        setSelected(getPosition(item) == selected ? null : item);
     }
 }
\ No newline at end of file
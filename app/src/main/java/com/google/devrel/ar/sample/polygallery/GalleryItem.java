@@ -21,17 +21,40 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 
 import com.google.ar.sceneform.assets.RenderableSource;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 public class GalleryItem {
   private static final String TAG = "GalleryItem";
 
+  // Deadline for loading the thumbnail.
+  private static final long THUMBNAIL_DEADLINE_MS = 15000;
+
+  // Time after a failed thumbnail load before it is requested again.
+  private static final long THUMBNAIL_RETRY_INTERVAL_MS = 10000;
+
+  // Deadline for loading and building the model renderable.
+  private static final long MODEL_LOAD_DEADLINE_MS = 60000;
+
+  // Used to time out model loads.
+  private static final Handler timeoutHandler = new Handler(Looper.getMainLooper());
+
+  // Limits the number of thumbnails loading at once.
+  private static final RequestLimiter thumbnailLimiter =
+          new RequestLimiter(FetchPolicy::getMaxParallelRequests);
+
   // Used to identify the model.  For example it is used as the sceneform registryId.
   private final String key;
 
@@ -42,16 +65,28 @@ public class GalleryItem {
   private String description;
   private String thumbnail;
   private String modelUrl;
+  private String[] modelResourceUrls = new String[0];
 
-  // A completableFuture to hold the thumbnail bitmap.  It is loaded asynchronously, thus the
-  // future.
-  private CompletableFuture<Bitmap> thumbnailHolder;
+  // The estimated download size of the model, see estimateSize().
+  private CompletableFuture<Long> sizeEstimate;
+
+  // The download progress of the model, updated on the background handler.
+  private volatile long bytesReceived;
+  private volatile long bytesExpected = -1;
+
+  // The load state of the thumbnail bitmap.  It is loaded asynchronously, and may be requested
+  // from the worker and the main thread.
+  private final LoadState<Bitmap> thumbnailState = new LoadState<>(THUMBNAIL_RETRY_INTERVAL_MS);
+
+  // The handler the thumbnail was loaded with, used to load it again after it is released and
+  // for the size estimate.
+  private volatile Handler backgroundHandler;
 
   // Reference to the viewHolder holding this item, can be null.
   private RecyclerView.ViewHolder viewHolder;
 
-  // Future used when loading the model.
-  private CompletableFuture<ModelRenderable> renderableHolder;
+  // The load state of the model.  A failed load is retried on the next request.
+  private final LoadState<ModelRenderable> renderableState = new LoadState<>(0);
 
   /**
    * Constructor.
@@ -62,6 +97,13 @@ public class GalleryItem {
     this.key = key;
   }
 
+  /**
+   * The key of the asset.  This is unique within the search results.
+   */
+  public String getKey() {
+    return key;
+  }
+
   /**
    * The display name of the asset.
    */
@@ -119,26 +161,53 @@ public class GalleryItem {
    * @see #getThumbnailHolder()
    */
   public void loadThumbnail(Handler handler) {
-    // Send an asynchronous request.
-    if (thumbnailHolder == null) {
-      thumbnailHolder = new CompletableFuture<>();
+    backgroundHandler = handler;
+    thumbnailState.load(() -> fetchThumbnail(handler));
+  }
+
+  // Sends the thumbnail request.  The number of thumbnails loading at once is limited, so they
+  // leave bandwidth for the models.
+  private CompletableFuture<Bitmap> fetchThumbnail(Handler handler) {
+    CompletableFuture<Bitmap> future = new CompletableFuture<>();
+    thumbnailLimiter.submit(done -> {
       AsyncHttpRequest request = new AsyncHttpRequest(getThumbnail(),
               handler, new AsyncHttpRequest.CompletionListener() {
 
         @Override
         public void onHttpRequestSuccess(byte[] responseBody) {
-          thumbnailHolder.complete(BitmapFactory.decodeByteArray(responseBody,
-                  0, responseBody.length));
+          done.run();
+          Bitmap bitmap = decodeThumbnail(responseBody);
+          ThumbnailPreviews.put(key, bitmap);
+          future.complete(bitmap);
         }
 
         @Override
         public void onHttpRequestFailure(int statusCode, String message, Exception exception) {
+          done.run();
           Log.e(TAG, "Cannot load thumbnail: " + statusCode + " " + message, exception);
-          thumbnailHolder.completeExceptionally(exception);
+          future.completeExceptionally(exception != null ? exception : new IOException(message));
         }
       });
+      request.setDeadline(THUMBNAIL_DEADLINE_MS);
       request.send();
+    });
+    return future;
+  }
+
+  // Decodes the thumbnail, sampled down to the size set by the fetch policy.  The density of the
+  // bitmap is lowered by the same factor, so it is shown at the same size.
+  private static Bitmap decodeThumbnail(byte[] data) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = FetchPolicy.getThumbnailSampleSize(options.outWidth,
+            options.outHeight);
+    Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    if (bitmap != null && options.inSampleSize > 1) {
+      bitmap.setDensity(bitmap.getDensity() / options.inSampleSize);
     }
+    return bitmap;
   }
 
   /**
@@ -150,6 +219,95 @@ public class GalleryItem {
     this.modelUrl = modelUrl;
   }
 
+  /**
+   * Sets the URLs of the files the model file references, such as buffers and textures.
+   */
+  public void setModelResourceUrls(String[] modelResourceUrls) {
+    this.modelResourceUrls = modelResourceUrls;
+  }
+
+  /**
+   * Starts estimating the download size of the model, from the Content-Length of HEAD requests
+   * for the model file and its resources.  Nothing is done if the estimate is already started,
+   * or if the thumbnail was never loaded, since its handler is used for the requests.
+   */
+  public void estimateSize() {
+    if (sizeEstimate != null || backgroundHandler == null || modelUrl == null) {
+      return;
+    }
+    List<CompletableFuture<Long>> sizes = new ArrayList<>();
+    sizes.add(requestSize(modelUrl));
+    for (String url : modelResourceUrls) {
+      sizes.add(requestSize(url));
+    }
+    sizeEstimate = CompletableFuture.allOf(sizes.toArray(new CompletableFuture[0]))
+            .thenApply(ignored -> {
+              long total = 0;
+              for (CompletableFuture<Long> size : sizes) {
+                if (size.join() < 0) {
+                  return -1L;
+                }
+                total += size.join();
+              }
+              return total;
+            });
+  }
+
+  // Returns the Content-Length of the URL, -1 if unknown or the request fails.
+  private CompletableFuture<Long> requestSize(String url) {
+    CompletableFuture<Long> size = new CompletableFuture<>();
+    AsyncHttpRequest[] request = new AsyncHttpRequest[1];
+    request[0] = new AsyncHttpRequest(url, backgroundHandler,
+            new AsyncHttpRequest.CompletionListener() {
+              @Override
+              public void onHttpRequestSuccess(byte[] responseBody) {
+                size.complete(request[0].getContentLength());
+              }
+
+              @Override
+              public void onHttpRequestFailure(int statusCode, String message,
+                                               Exception exception) {
+                size.complete(-1L);
+              }
+            });
+    request[0].setMethod("HEAD");
+    request[0].setRetryPolicy(RetryPolicy.NONE);
+    request[0].setDeadline(THUMBNAIL_DEADLINE_MS);
+    request[0].send();
+    return size;
+  }
+
+  /**
+   * Returns the estimated download size of the model in bytes, or -1 if it is not known (yet).
+   */
+  public long getEstimatedSize() {
+    CompletableFuture<Long> estimate = sizeEstimate;
+    return estimate != null && estimate.isDone() ? estimate.join() : -1;
+  }
+
+  /**
+   * Returns true while the model is loading.
+   */
+  public boolean isLoading() {
+    return renderableState.getPhase() == LoadState.Phase.LOADING;
+  }
+
+  /**
+   * Returns the number of bytes of the model downloaded so far.
+   */
+  public long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  /**
+   * Returns the number of bytes of the model expected, the size estimate if known, otherwise
+   * the sum of the sizes of the files being downloaded.  -1 if unknown.
+   */
+  public long getBytesExpected() {
+    long estimate = getEstimatedSize();
+    return estimate > 0 ? estimate : bytesExpected;
+  }
+
   /**
    * Returns the currently associated ViewHolder for this item.
    *
@@ -165,31 +323,138 @@ public class GalleryItem {
 
   /**
    * Returns the future for the ModelRenderable.  This starts the loading process if not
-   * already started.
+   * already started, or if the previous load failed or was released.  The future completes
+   * exceptionally with a TimeoutException if the model is not built within the model load
+   * deadline.
    */
   public CompletableFuture<ModelRenderable> getRenderableHolder() {
+    return getRenderableHolder(null);
+  }
 
-    if (renderableHolder == null) {
-      Context context = viewHolder.itemView.getContext();
-      RenderableSource source = RenderableSource.builder().setSource(context,
-              Uri.parse(modelUrl), RenderableSource.SourceType.GLTF2)
-              .setRecenterMode(RenderableSource.RecenterMode.ROOT)
-              .build();
+  /**
+   * Returns the future for the ModelRenderable, tracing the build under the given span if it
+   * is started by this call.
+   *
+   * @param parent the trace span the load is part of, may be null.
+   */
+  public CompletableFuture<ModelRenderable> getRenderableHolder(Tracer.Span parent) {
+    return renderableState.load(() -> buildRenderable(parent));
+  }
 
+  // Builds the renderable.  Must be called on the main thread.
+  private CompletableFuture<ModelRenderable> buildRenderable(Tracer.Span parent) {
+    Tracer.Span span = Tracer.begin("renderable.build", parent);
+    Context context = viewHolder.itemView.getContext();
+
+    CompletableFuture<ModelRenderable> future = new CompletableFuture<>();
+    Runnable timeout = () -> {
+      if (future.completeExceptionally(new TimeoutException("Loading model " + displayName
+              + " timed out after " + MODEL_LOAD_DEADLINE_MS + "ms"))) {
+        RequestMetrics.recordDeadlineExceeded();
+      }
+    };
+    timeoutHandler.postDelayed(timeout, MODEL_LOAD_DEADLINE_MS);
+    long start = SystemClock.elapsedRealtime();
+    ModelCache cache = ModelCache.getInstance();
+    getPackedModel(cache, span)
+            .thenComposeAsync(packed -> ModelRenderable.builder().setRegistryId(key)
+                    .setSource(context, buildSource(context, packed))
+                    .build()
+                    .thenApply(renderable -> {
+                      Log.d(TAG, "Loaded " + (packed != null ? "packed" : "glTF") + " model "
+                              + displayName + " in " + (SystemClock.elapsedRealtime() - start)
+                              + "ms");
+                      return renderable;
+                    }), timeoutHandler::post)
+            .whenComplete((renderable, throwable) -> {
+              timeoutHandler.removeCallbacks(timeout);
+              span.end();
+              if (cache != null) {
+                // The renderable holds its own copy of the model, the file may be evicted.
+                cache.release(key);
+              }
+              if (throwable != null) {
+                future.completeExceptionally(throwable);
+              } else {
+                future.complete(renderable);
+              }
+            });
+    return future;
+  }
+
+  // Returns the packed model from the model cache, or null if there is no cache or the model
+  // could not be packed, in which case it is loaded from the model URL.  The file stays pinned
+  // in the cache until released.
+  private CompletableFuture<File> getPackedModel(ModelCache cache, Tracer.Span span) {
+    if (cache == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    AsyncHttpRequest.ProgressListener progress = (received, expected) -> {
+      bytesReceived = received;
+      bytesExpected = expected;
+    };
+    return cache.get(key, modelUrl, span, progress).handle((packed, throwable) -> {
+      if (throwable != null) {
+        Log.w(TAG, "Cannot pack model " + displayName + ", loading " + modelUrl, throwable);
+        return null;
+      }
+      return packed;
+    });
+  }
 
-      renderableHolder = ModelRenderable.builder().setRegistryId(key)
-              .setSource(context, source)
-              .build();
+  private RenderableSource buildSource(Context context, File packed) {
+    RenderableSource.Builder builder = RenderableSource.builder();
+    if (packed != null) {
+      builder.setSource(context, ModelCache.openMapped(packed),
+              RenderableSource.SourceType.GLB);
+    } else {
+      builder.setSource(context, Uri.parse(modelUrl), RenderableSource.SourceType.GLTF2);
     }
-    return renderableHolder;
+    return builder.setRecenterMode(RenderableSource.RecenterMode.ROOT).build();
   }
 
   /**
    * Returns the future for the thumbnail bitmap.  The loading is done via {link #loadThumbnail()}.
+   * If the thumbnail was released, or failed to load a while ago, it is loaded again.
    *
    * @return the future, or null if loadThumbnail has not been called.
    */
   public CompletableFuture<Bitmap> getThumbnailHolder() {
-    return thumbnailHolder;
+    Handler handler = backgroundHandler;
+    if (handler != null) {
+      loadThumbnail(handler);
+    }
+    return thumbnailState.getFuture();
+  }
+
+  /**
+   * Returns the size of the loaded thumbnail bitmap, or 0 if it is not loaded.
+   */
+  public long getThumbnailBytes() {
+    Bitmap bitmap = thumbnailState.getNow();
+    return bitmap != null ? bitmap.getAllocationByteCount() : 0;
+  }
+
+  /**
+   * Drops the loaded thumbnail.  It is loaded again the next time it is needed.  A thumbnail
+   * that is still loading is kept.
+   */
+  public void releaseThumbnail() {
+    thumbnailState.evict();
+  }
+
+  /**
+   * Returns true if the renderable is loaded.
+   */
+  public boolean hasRenderable() {
+    return renderableState.getPhase() == LoadState.Phase.LOADED;
+  }
+
+  /**
+   * Drops the loaded renderable.  It is loaded again the next time it is needed.  A renderable
+   * that is still loading is kept.
+   */
+  public void releaseRenderable() {
+    renderableState.evict();
   }
-}
\ No newline at end of file
+}
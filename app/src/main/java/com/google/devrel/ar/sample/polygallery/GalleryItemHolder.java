@@ -15,9 +15,15 @@
  */
 package com.google.devrel.ar.sample.polygallery;
 
+import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.drawable.Drawable;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
+import android.widget.ImageView;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * ViewHolder for showing a thumbnail of a model from Poly.
@@ -28,6 +34,10 @@ public class GalleryItemHolder extends RecyclerView.ViewHolder {
   private final GalleryAdapter adapter;
   private GalleryItem item;
 
+  // Drops thumbnails completing after the holder was rebound or recycled.  Only accessed on
+  // the main thread.
+  private final DeferredBinding<Bitmap> thumbnailBinding = new DeferredBinding<>();
+
   /**
    * Constructs a ViewHolder.
    *
@@ -37,44 +47,83 @@ public class GalleryItemHolder extends RecyclerView.ViewHolder {
   public GalleryItemHolder(View itemView, GalleryAdapter galleryAdapter) {
     super(itemView);
     this.adapter = galleryAdapter;
+    itemView.setOnClickListener(this::onClick);
   }
 
   /**
    * Sets the item for this view holder.  The view is updated to
    * handle selection and selection state.
    *
-   * @param item - from the adapter associated with this view holder.
+   * @param item     - from the adapter associated with this view holder.
+   * @param selected - true if the item is the selected item of the adapter.
    */
-  public void setItem(GalleryItem item) {
+  public void setItem(GalleryItem item, boolean selected) {
+    thumbnailBinding.unbind();
     this.item = item;
-    itemView.setOnClickListener(this::onClick);
-    if (!item.equals(adapter.getSelected())) {
-      itemView.setBackgroundColor(DESELECTED_COLOR);
-      itemView.setSelected(false);
-    } else {
-      itemView.setSelected(true);
-      itemView.setBackgroundColor(SELECTED_COLOR);
-    }
+    setSelectedState(selected);
   }
 
   /**
-   * Handles the click to select an item.
+   * Returns the item bound to this holder, or null if it is not bound.
    */
-  private void onClick(View view) {
-    GalleryItem selected = adapter.getSelected();
-    if (!item.equals(selected)) {
-      if (selected != null) {
-        selected.getViewHolder().itemView.setBackgroundColor(DESELECTED_COLOR);
-      }
-      adapter.setSelected(item);
-      itemView.setSelected(true);
-      itemView.setBackgroundColor(SELECTED_COLOR);
+  public GalleryItem getItem() {
+    return item;
+  }
+
+  /**
+   * Shows the thumbnail of the current item.  If the bitmap is not loaded yet, the placeholder
+   * is shown and the bitmap is set when the future completes, unless the holder was
+   * rebound or recycled in the meantime.
+   *
+   * @param thumbnail    the future holding the thumbnail bitmap.
+   * @param mainExecutor executor running on the main thread.
+   */
+  public void setThumbnail(CompletableFuture<Bitmap> thumbnail, Executor mainExecutor) {
+    thumbnailBinding.bind(thumbnail, mainExecutor, this::showThumbnail);
+  }
+
+  /**
+   * Called when the holder is recycled.  Drops the pending thumbnail delivery so a late
+   * completion is not delivered to the next item bound to this holder.
+   */
+  public void unbind() {
+    thumbnailBinding.unbind();
+    item = null;
+  }
+
+  // Sets the bitmap on the image view.  If null, the stored preview of the item is shown, or the
+  // placeholder if there is none.
+  private void showThumbnail(Bitmap bitmap) {
+    ImageView imageView = (ImageView) itemView;
+    if (bitmap != null) {
+      imageView.setImageBitmap(bitmap);
     } else {
-      adapter.setSelected(null);
-      itemView.setSelected(false);
-      itemView.setBackgroundColor(DESELECTED_COLOR);
+      Drawable preview = item != null ? ThumbnailPreviews.get(item.getKey()) : null;
+      if (preview != null) {
+        imageView.setImageDrawable(preview);
+      } else {
+        imageView.setImageResource(R.drawable.model_placeholder);
+      }
     }
+    imageView.requestLayout();
   }
 
+  /**
+   * Updates the view to show the selection state.  This is also used for the partial rebind
+   * when only the selection changes.
+   */
+  public void setSelectedState(boolean selected) {
+    itemView.setSelected(selected);
+    itemView.setBackgroundColor(selected ? SELECTED_COLOR : DESELECTED_COLOR);
+  }
 
+  /**
+   * Handles the click to select an item.  The adapter rebinds the affected holders, so the
+   * holder of the previous selection is never touched directly.
+   */
+  private void onClick(View view) {
+    if (item != null) {
+      adapter.toggleSelected(item);
+    }
+  }
 }
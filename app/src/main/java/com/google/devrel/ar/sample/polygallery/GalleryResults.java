@@ -0,0 +1,236 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Compact store for the search results.
+ * <p>
+ * The metadata of the assets is kept in columns instead of one object per asset.  Author names
+ * and licenses repeat across results, so they are stored once and referenced by index.  The
+ * {@link GalleryItem} of a result is only created when it is first needed, typically when it is
+ * shown in the gallery, and starts loading its thumbnail then.  At most
+ * {@link #MAX_CREATED_ITEMS} items are kept, the least recently requested items that are not in
+ * use are dropped and created again when needed.
+ */
+public class GalleryResults {
+  private static final int INITIAL_CAPACITY = 32;
+
+  /**
+   * The most items kept once created, unless more are in use.
+   */
+  static final int MAX_CREATED_ITEMS = 64;
+
+  // Strings stored once and referenced by index.
+  private static class Dictionary {
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    int encode(String value) {
+      Integer index = indexes.get(value);
+      if (index == null) {
+        index = values.size();
+        values.add(value);
+        indexes.put(value, index);
+      }
+      return index;
+    }
+
+    String decode(int index) {
+      return values.get(index);
+    }
+  }
+
+  // The handler used to load the thumbnails of the items.
+  private final Handler thumbnailHandler;
+
+  private int size;
+  private String[] keys = new String[INITIAL_CAPACITY];
+  private String[] displayNames = new String[INITIAL_CAPACITY];
+  private String[] descriptions = new String[INITIAL_CAPACITY];
+  private String[] thumbnails = new String[INITIAL_CAPACITY];
+  private String[] modelUrls = new String[INITIAL_CAPACITY];
+  private String[][] modelResourceUrls = new String[INITIAL_CAPACITY][];
+  private int[] authors = new int[INITIAL_CAPACITY];
+  private int[] licenses = new int[INITIAL_CAPACITY];
+  private final Dictionary authorNames = new Dictionary();
+  private final Dictionary licenseNames = new Dictionary();
+
+  // Maps the key of each result to its position.
+  private final Map<String, Integer> positions = new HashMap<>();
+
+  // The items created so far by position, least recently requested first.
+  private final LinkedHashMap<Integer, GalleryItem> items = new LinkedHashMap<>(16, 0.75f, true);
+
+  // Returns true for the items that must not be dropped.
+  private Predicate<GalleryItem> inUse = item -> false;
+
+  /**
+   * Creates an empty store.
+   *
+   * @param thumbnailHandler a background handler used to load the thumbnails.
+   */
+  public GalleryResults(Handler thumbnailHandler) {
+    this.thumbnailHandler = thumbnailHandler;
+  }
+
+  /**
+   * Sets the test of the items in use, such as the items on screen.  They are kept when the
+   * number of created items is over the limit.  The test must not request items.
+   */
+  public void setInUse(Predicate<GalleryItem> inUse) {
+    this.inUse = inUse;
+  }
+
+  /**
+   * Adds a result.  Results with a key already in the store are skipped.
+   *
+   * @return true if the result was added.
+   */
+  public boolean add(String key, String displayName, String authorName, String license,
+                     String description, String thumbnail, String modelUrl,
+                     String[] resourceUrls) {
+    if (positions.containsKey(key)) {
+      return false;
+    }
+    if (size == keys.length) {
+      grow();
+    }
+    keys[size] = key;
+    displayNames[size] = displayName;
+    authors[size] = authorNames.encode(authorName);
+    licenses[size] = licenseNames.encode(license);
+    descriptions[size] = description;
+    thumbnails[size] = thumbnail;
+    modelUrls[size] = modelUrl;
+    modelResourceUrls[size] = resourceUrls;
+    positions.put(key, size);
+    size++;
+    return true;
+  }
+
+  private void grow() {
+    int capacity = keys.length * 2;
+    keys = Arrays.copyOf(keys, capacity);
+    displayNames = Arrays.copyOf(displayNames, capacity);
+    descriptions = Arrays.copyOf(descriptions, capacity);
+    thumbnails = Arrays.copyOf(thumbnails, capacity);
+    modelUrls = Arrays.copyOf(modelUrls, capacity);
+    modelResourceUrls = Arrays.copyOf(modelResourceUrls, capacity);
+    authors = Arrays.copyOf(authors, capacity);
+    licenses = Arrays.copyOf(licenses, capacity);
+  }
+
+  /**
+   * Returns the number of results.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the key of the result at the given position.
+   */
+  public String getKey(int position) {
+    return keys[position];
+  }
+
+  /**
+   * Returns the keys of the results, in order.
+   */
+  public List<String> getKeys() {
+    return Arrays.asList(Arrays.copyOf(keys, size));
+  }
+
+  /**
+   * Returns the position of the result with the given key, or -1 if it is not in the store.
+   */
+  public int indexOf(String key) {
+    Integer position = positions.get(key);
+    return position != null ? position : -1;
+  }
+
+  /**
+   * Returns the item for the result at the given position.  The item is created, and starts
+   * loading its thumbnail, the first time it is requested.  Must be called on the main thread.
+   */
+  public GalleryItem getItem(int position) {
+    GalleryItem item = items.get(position);
+    if (item == null) {
+      item = new GalleryItem(keys[position]);
+      item.setDisplayName(displayNames[position]);
+      item.setAuthorInfo(authorNames.decode(authors[position]),
+              licenseNames.decode(licenses[position]));
+      item.setDescription(descriptions[position]);
+      item.setThumbnail(thumbnails[position]);
+      item.setModelUrl(modelUrls[position]);
+      item.setModelResourceUrls(modelResourceUrls[position]);
+      item.loadThumbnail(thumbnailHandler);
+      items.put(position, item);
+      dropUnused(item);
+    }
+    return item;
+  }
+
+  // Drops the least recently requested items not in use while there are too many.
+  private void dropUnused(GalleryItem created) {
+    Iterator<GalleryItem> iterator = items.values().iterator();
+    while (items.size() > MAX_CREATED_ITEMS && iterator.hasNext()) {
+      GalleryItem item = iterator.next();
+      if (item != created && !inUse.test(item)) {
+        item.releaseThumbnail();
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Drops the created items that are not kept.  Their metadata stays in the columns, and the
+   * items are created again when they are next requested.  Must be called on the main thread.
+   *
+   * @param keep returns true for the items that are in use.
+   * @return the number of items dropped.
+   */
+  public int releaseItems(Predicate<GalleryItem> keep) {
+    int released = 0;
+    for (Iterator<GalleryItem> iterator = items.values().iterator(); iterator.hasNext(); ) {
+      GalleryItem item = iterator.next();
+      if (!keep.test(item)) {
+        item.releaseThumbnail();
+        iterator.remove();
+        released++;
+      }
+    }
+    return released;
+  }
+
+  /**
+   * Returns the items created so far.
+   */
+  public List<GalleryItem> getCreatedItems() {
+    return new ArrayList<>(items.values());
+  }
+}
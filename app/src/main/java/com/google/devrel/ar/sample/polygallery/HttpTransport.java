@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.Handler;
+
+/**
+ * Sends the GET requests of the {@link PolyApi}.
+ */
+public interface HttpTransport {
+  /**
+   * Transport sending each request with an {@link AsyncHttpRequest}.
+   */
+  HttpTransport ASYNC = (url, deadlineMillis, parent, handler, listener) -> {
+    AsyncHttpRequest request = new AsyncHttpRequest(url, handler, listener);
+    request.setDeadline(deadlineMillis);
+    request.setTraceParent(parent);
+    request.send();
+  };
+
+  /**
+   * Sends a GET request asynchronously.
+   *
+   * @param url            the URL of the request.
+   * @param deadlineMillis the time budget of the request, 0 for no deadline.
+   * @param parent         the trace span the request is part of, may be null.
+   * @param handler        the handler on which the listener is called.
+   * @param listener       the listener to call when the request completes.
+   */
+  void get(String url, long deadlineMillis, Tracer.Span parent, Handler handler,
+           AsyncHttpRequest.CompletionListener listener);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.widget.TextView;
+
+import com.google.ar.sceneform.rendering.ViewRenderable;
+
+/**
+ * Node displaying the info card of a placed model.  Info cards are reused through the
+ * {@link InfoCardPool} and kept facing the camera by the {@link Billboarder}.
+ */
+public class InfoCard extends BillboardNode {
+  // The key of the item the label was built for.
+  private String itemKey;
+
+  // The text to show, kept until the view renderable is set.
+  private String label;
+
+  /**
+   * Sets the view renderable of the card and shows the current label on it.
+   */
+  void setViewRenderable(ViewRenderable renderable) {
+    setRenderable(renderable);
+    if (label != null) {
+      applyLabel();
+    }
+  }
+
+  /**
+   * Shows the information of the item on the card.  The label is only rebuilt when the item
+   * changes, and the text view only updated when the text changes.
+   */
+  public void setItem(GalleryItem item) {
+    if (item.getKey().equals(itemKey)) {
+      return;
+    }
+    itemKey = item.getKey();
+    label = item.getDisplayName() + " by " + item.getAuthor() + "\n" + item.getLicense();
+    if (getRenderable() != null) {
+      applyLabel();
+    }
+  }
+
+  private void applyLabel() {
+    TextView textView = (TextView) ((ViewRenderable) getRenderable()).getView();
+    if (!label.contentEquals(textView.getText())) {
+      textView.setText(label);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.ar.sceneform.rendering.ViewRenderable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of info cards.
+ * <p>
+ * Building the view renderable of a card inflates {@code R.layout.model_info} and uploads its
+ * texture, so cards are built ahead of time and reused across placements and mode switches.
+ * All methods must be called on the main thread.
+ */
+public class InfoCardPool {
+  private static final String TAG = "InfoCardPool";
+
+  // The most cards kept in the pool, extra released cards are dropped.
+  private static final int MAX_FREE_CARDS = 16;
+
+  private final Context context;
+  private final ArrayDeque<InfoCard> freeCards = new ArrayDeque<>();
+
+  public InfoCardPool(Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Builds cards until the pool holds the given number of free cards.
+   */
+  public void warm(int count) {
+    while (freeCards.size() < Math.min(count, MAX_FREE_CARDS)) {
+      freeCards.push(createCard());
+    }
+  }
+
+  /**
+   * Returns a card from the pool, or a new one if the pool is empty.  The renderable of a new
+   * card is set when it is built.
+   */
+  public InfoCard acquire() {
+    InfoCard card = freeCards.poll();
+    return card != null ? card : createCard();
+  }
+
+  /**
+   * Returns a card to the pool.  The card is removed from the scene.
+   */
+  public void release(InfoCard card) {
+    card.setParent(null);
+    card.setEnabled(true);
+    card.invalidateBillboard();
+    if (freeCards.size() < MAX_FREE_CARDS) {
+      freeCards.push(card);
+    }
+  }
+
+  /**
+   * Drops the free cards.  Cards are built again when needed.
+   */
+  public void trim() {
+    freeCards.clear();
+  }
+
+  /**
+   * Returns the number of free cards.
+   */
+  public int getFreeCount() {
+    return freeCards.size();
+  }
+
+  // Creates a card and starts building its view renderable.
+  private InfoCard createCard() {
+    InfoCard card = new InfoCard();
+    ViewRenderable.builder()
+            .setView(context, R.layout.model_info)
+            .build()
+            .thenAccept(card::setViewRenderable)
+            .exceptionally(
+                    (throwable) -> {
+                      Log.e(TAG, "Could not load info card view.", throwable);
+                      return null;
+                    });
+    return card;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The load state of a lazily loaded value, such as a thumbnail or a renderable.
+ * <p>
+ * The state moves from IDLE to LOADING when a load starts, then to LOADED or FAILED when it
+ * completes.  A loaded value can be EVICTED to free memory, and a failed or evicted value is
+ * loaded again on the next request.  All transitions are compare-and-set on a single reference,
+ * so any thread can request the value and exactly one of the concurrent requests starts the load.
+ *
+ * @param <T> the type of the value.
+ */
+public class LoadState<T> {
+  /**
+   * The phases of the load.
+   */
+  public enum Phase {
+    IDLE, LOADING, LOADED, FAILED, EVICTED
+  }
+
+  // An immutable snapshot of the state.  The future is null when idle or evicted.
+  private static final class Snapshot<T> {
+    final Phase phase;
+    final CompletableFuture<T> future;
+    final long failedAtNanos;
+
+    Snapshot(Phase phase, CompletableFuture<T> future, long failedAtNanos) {
+      this.phase = phase;
+      this.future = future;
+      this.failedAtNanos = failedAtNanos;
+    }
+  }
+
+  private final long retryIntervalNanos;
+  private final AtomicReference<Snapshot<T>> state =
+          new AtomicReference<>(new Snapshot<>(Phase.IDLE, null, 0));
+
+  /**
+   * Creates an idle state.
+   *
+   * @param retryIntervalMillis the time after a failure before a new request loads the value
+   *                            again.  Until then, requests get the failed future.
+   */
+  public LoadState(long retryIntervalMillis) {
+    this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+  }
+
+  /**
+   * Returns the future of the value, starting the load if the value is idle, evicted, or failed
+   * longer than the retry interval ago.  The loader is only called by the request that wins the
+   * transition to LOADING.
+   *
+   * @param loader starts the load and returns its future.
+   */
+  public CompletableFuture<T> load(Supplier<CompletableFuture<T>> loader) {
+    while (true) {
+      Snapshot<T> current = state.get();
+      switch (current.phase) {
+        case LOADING:
+        case LOADED:
+          return current.future;
+        case FAILED:
+          if (System.nanoTime() - current.failedAtNanos < retryIntervalNanos) {
+            return current.future;
+          }
+          break;
+        default:
+          break;
+      }
+      CompletableFuture<T> result = new CompletableFuture<>();
+      Snapshot<T> loading = new Snapshot<>(Phase.LOADING, result, 0);
+      if (!state.compareAndSet(current, loading)) {
+        // Another request changed the state first, look again.
+        continue;
+      }
+      result.whenComplete((value, throwable) -> state.compareAndSet(loading, throwable == null
+              ? new Snapshot<>(Phase.LOADED, result, 0)
+              : new Snapshot<>(Phase.FAILED, result, System.nanoTime())));
+      try {
+        loader.get().whenComplete((value, throwable) -> {
+          if (throwable != null) {
+            result.completeExceptionally(throwable);
+          } else {
+            result.complete(value);
+          }
+        });
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Returns the future of the current or last load, or null if the value is idle or evicted.
+   */
+  public CompletableFuture<T> getFuture() {
+    return state.get().future;
+  }
+
+  /**
+   * Returns the current phase.
+   */
+  public Phase getPhase() {
+    return state.get().phase;
+  }
+
+  /**
+   * Returns the value if it is loaded, otherwise null.
+   */
+  public T getNow() {
+    Snapshot<T> current = state.get();
+    return current.phase == Phase.LOADED ? current.future.join() : null;
+  }
+
+  /**
+   * Drops the loaded value, it is loaded again on the next request.  A value still loading is
+   * kept.
+   *
+   * @return true if the value was evicted.
+   */
+  public boolean evict() {
+    Snapshot<T> current = state.get();
+    return current.phase == Phase.LOADED
+            && state.compareAndSet(current, new Snapshot<>(Phase.EVICTED, null, 0));
+  }
+}
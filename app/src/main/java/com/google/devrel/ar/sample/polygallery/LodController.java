@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.google.ar.sceneform.Camera;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.SceneView;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.FixedHeightViewSizer;
+import com.google.ar.sceneform.rendering.ViewRenderable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Level of detail and culling for the placed models.
+ * <p>
+ * Called once per frame, this shows models far from the camera as a billboard of their
+ * thumbnail, kept facing the camera by the {@link Billboarder}, and disables the nodes of models
+ * that are off-screen or too small to see.  Switching back to a higher level needs the model to
+ * come a bit closer than the switching distance, so models at the threshold do not flicker.
+ */
+public class LodController {
+
+  /**
+   * The levels of detail of a placement.
+   */
+  public enum Level {
+    /** The model renderable is shown. */
+    FULL,
+    /** The thumbnail of the model is shown, facing the camera. */
+    BILLBOARD,
+    /** The model node is disabled. */
+    HIDDEN
+  }
+
+  // Models further than this, in meters, are shown as billboards.
+  private static final float BILLBOARD_DISTANCE = 4f;
+
+  // Models with a smaller bounding radius to distance ratio are shown as billboards.
+  private static final float BILLBOARD_ANGULAR_SIZE = 0.05f;
+
+  // Models with a smaller bounding radius to distance ratio are hidden.
+  private static final float HIDDEN_ANGULAR_SIZE = 0.008f;
+
+  // Factor applied to the thresholds when switching back to a higher level.
+  private static final float HYSTERESIS = 1.15f;
+
+  // Models this many pixels outside of the view are still considered on screen.
+  private static final float SCREEN_MARGIN_PX = 32f;
+
+  private final Context context;
+
+  // Billboard renderables, by asset key.  They are shared by the placements of the asset.
+  private final Map<String, CompletableFuture<ViewRenderable>> billboards = new HashMap<>();
+
+  public LodController(Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Updates the level of detail of the placements.  Placements without a loaded renderable are
+   * left alone.
+   *
+   * @param view       the view showing the scene.
+   * @param placements the placements to update.
+   */
+  public void update(SceneView view, List<Placement> placements) {
+    Camera camera = view.getScene().getCamera();
+    Vector3 cameraPosition = camera.getWorldPosition();
+    Vector3 forward = camera.getForward();
+    Vector3 right = camera.getRight();
+    int width = view.getWidth();
+    int height = view.getHeight();
+
+    for (Placement placement : placements) {
+      if (placement.getRenderable() == null) {
+        continue;
+      }
+      Node modelNode = placement.getModelNode();
+      Vector3 center = modelNode.getWorldPosition();
+      float radius = placement.getBounds().getRadius() * modelNode.getWorldScale().x;
+      Vector3 toNode = Vector3.subtract(center, cameraPosition);
+      float distance = toNode.length();
+
+      Level current = placement.getLevel();
+      Level level;
+      if (distance > radius
+              && !isOnScreen(camera, center, toNode, forward, right, radius, width, height)) {
+        level = Level.HIDDEN;
+      } else {
+        level = chooseLevel(current, distance, radius);
+      }
+      if (level != current) {
+        apply(placement, level);
+      }
+    }
+  }
+
+  // Picks the level for a visible model based on its distance and apparent size.
+  private static Level chooseLevel(Level current, float distance, float radius) {
+    float angularSize = distance > 0 ? radius / distance : Float.MAX_VALUE;
+    // Going up a level needs the model to be a bit closer than going down.
+    float hiddenSize = current == Level.HIDDEN
+            ? HIDDEN_ANGULAR_SIZE * HYSTERESIS : HIDDEN_ANGULAR_SIZE;
+    if (angularSize < hiddenSize) {
+      return Level.HIDDEN;
+    }
+    boolean billboard = current != Level.FULL;
+    float billboardDistance = billboard ? BILLBOARD_DISTANCE / HYSTERESIS : BILLBOARD_DISTANCE;
+    float billboardSize = billboard
+            ? BILLBOARD_ANGULAR_SIZE * HYSTERESIS : BILLBOARD_ANGULAR_SIZE;
+    if (distance > billboardDistance || angularSize < billboardSize) {
+      return Level.BILLBOARD;
+    }
+    return Level.FULL;
+  }
+
+  // Returns true if the bounding sphere of the model overlaps the view.
+  private static boolean isOnScreen(Camera camera, Vector3 center, Vector3 toNode,
+                                    Vector3 forward, Vector3 right, float radius,
+                                    int width, int height) {
+    if (Vector3.dot(toNode, forward) < -radius) {
+      // Behind the camera.
+      return false;
+    }
+    Vector3 screen = camera.worldToScreenPoint(center);
+    Vector3 edge = camera.worldToScreenPoint(Vector3.add(center, right.scaled(radius)));
+    float radiusPx = (float) Math.hypot(edge.x - screen.x, edge.y - screen.y) + SCREEN_MARGIN_PX;
+    return screen.x + radiusPx >= 0 && screen.x - radiusPx <= width
+            && screen.y + radiusPx >= 0 && screen.y - radiusPx <= height;
+  }
+
+  // Switches the placement to the level.  A billboard is only shown once it is built, until then
+  // the model stays at full detail.
+  private void apply(Placement placement, Level level) {
+    Node modelNode = placement.getModelNode();
+    ViewRenderable billboard = null;
+    if (level == Level.BILLBOARD) {
+      billboard = getBillboard(placement);
+      if (billboard == null) {
+        level = Level.FULL;
+        if (placement.getLevel() == Level.FULL) {
+          return;
+        }
+      }
+    }
+    placement.setLevel(level);
+    modelNode.setEnabled(level != Level.HIDDEN);
+    if (level == Level.HIDDEN) {
+      return;
+    }
+
+    boolean full = level == Level.FULL;
+    modelNode.setRenderable(full ? placement.getRenderable() : null);
+    if (placement.getInfoCard() != null) {
+      placement.getInfoCard().setEnabled(full);
+    }
+    BillboardNode billboardNode = placement.getBillboardNode();
+    if (!full && billboardNode == null) {
+      billboardNode = new BillboardNode();
+      billboardNode.setParent(modelNode);
+      placement.setBillboardNode(billboardNode);
+    }
+    if (billboardNode != null) {
+      billboardNode.setRenderable(billboard);
+      billboardNode.setEnabled(!full);
+    }
+  }
+
+  // Returns the billboard for the placement's asset, or null if it is not built yet.  The build
+  // is started the first time it is needed, once the thumbnail is available.
+  private ViewRenderable getBillboard(Placement placement) {
+    GalleryItem item = placement.getItem();
+    CompletableFuture<ViewRenderable> future = billboards.get(item.getKey());
+    if (future == null) {
+      CompletableFuture<Bitmap> thumbnail = item.getThumbnailHolder();
+      if (thumbnail == null || !thumbnail.isDone() || thumbnail.isCompletedExceptionally()) {
+        return null;
+      }
+      ImageView imageView = new ImageView(context);
+      imageView.setImageBitmap(thumbnail.join());
+      float height = placement.getBounds().getHeight();
+      future = ViewRenderable.builder()
+              .setView(context, imageView)
+              .setSizer(new FixedHeightViewSizer(height > 0 ? height : 1f))
+              .setVerticalAlignment(ViewRenderable.VerticalAlignment.BOTTOM)
+              .build();
+      billboards.put(item.getKey(), future);
+    }
+    if (!future.isDone() || future.isCompletedExceptionally()) {
+      return null;
+    }
+    return future.join();
+  }
+
+  /**
+   * Releases the billboards.
+   */
+  public void clear() {
+    billboards.clear();
+  }
+
+  /**
+   * Releases the billboards of the assets not in the given set.
+   */
+  public void retain(Set<String> keys) {
+    billboards.keySet().retainAll(keys);
+  }
+
+  /**
+   * Returns the number of billboards built or being built.
+   */
+  public int getBillboardCount() {
+    return billboards.size();
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Releases cached data when the system runs low on memory, so the process is less likely to be
+ * killed while the AR session is running.
+ * <p>
+ * Caches are registered with a priority.  The higher the trim level, the more priorities are
+ * trimmed, starting with the data that is cheapest to get back: off-screen thumbnails, then the
+ * renderables of models that are not placed, then metadata.  All methods must be called on the
+ * main thread.
+ */
+public class MemoryGovernor implements ComponentCallbacks2 {
+  private static final String TAG = "MemoryGovernor";
+
+  /**
+   * The order in which caches are trimmed.
+   */
+  public enum Priority {
+    // Thumbnails of the gallery items that are not on screen.
+    THUMBNAILS,
+    // Renderables of the models that are not placed in the scene.
+    RENDERABLES,
+    // Asset metadata and search results.
+    METADATA
+  }
+
+  /**
+   * A cache that can release memory.
+   */
+  public interface Trimmable {
+    /**
+     * Returns the number of entries held.
+     */
+    int getEntryCount();
+
+    /**
+     * Returns an estimate of the bytes held, or 0 if the size is not known.
+     */
+    long getFootprintBytes();
+
+    /**
+     * Releases the entries that can be loaded again.
+     */
+    void trim();
+  }
+
+  private static class Registration {
+    final Priority priority;
+    final String name;
+    final Trimmable trimmable;
+
+    Registration(Priority priority, String name, Trimmable trimmable) {
+      this.priority = priority;
+      this.name = name;
+      this.trimmable = trimmable;
+    }
+  }
+
+  private final List<Registration> registrations = new ArrayList<>();
+
+  /**
+   * Registers a cache.
+   *
+   * @param priority  when the cache is trimmed.
+   * @param name      the name of the cache, used for logging.
+   * @param trimmable the cache.
+   */
+  public void register(Priority priority, String name, Trimmable trimmable) {
+    registrations.add(new Registration(priority, name, trimmable));
+  }
+
+  /**
+   * Trims the caches registered with the given priority or a lower one, in priority order.
+   */
+  public void trim(Priority upTo) {
+    StringBuilder log = new StringBuilder("Trimming up to ").append(upTo).append(':');
+    for (Priority priority : Priority.values()) {
+      if (priority.compareTo(upTo) > 0) {
+        break;
+      }
+      for (Registration registration : registrations) {
+        if (registration.priority == priority) {
+          String before = describe(registration.trimmable);
+          registration.trimmable.trim();
+          log.append(' ').append(registration.name).append(' ').append(before)
+                  .append(" -> ").append(describe(registration.trimmable)).append(';');
+        }
+      }
+    }
+    Log.i(TAG, log.toString());
+  }
+
+  /**
+   * Returns the footprint of all the registered caches, for logging.
+   */
+  public String summary() {
+    StringBuilder summary = new StringBuilder();
+    for (Registration registration : registrations) {
+      summary.append(summary.length() == 0 ? "" : ", ")
+              .append(registration.name).append(' ')
+              .append(describe(registration.trimmable));
+    }
+    return summary.toString();
+  }
+
+  private static String describe(Trimmable trimmable) {
+    return trimmable.getEntryCount() + " entries/" + trimmable.getFootprintBytes() / 1024 + "KB";
+  }
+
+  /**
+   * Returns the highest priority trimmed for a trim level, or null if nothing is trimmed.
+   */
+  static Priority getPriorityForLevel(int level) {
+    if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+      return Priority.METADATA;
+    }
+    if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_LOW) {
+      return Priority.RENDERABLES;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+      return Priority.THUMBNAILS;
+    }
+    return null;
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    Priority priority = getPriorityForLevel(level);
+    if (priority != null) {
+      trim(priority);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    trim(Priority.METADATA);
+  }
+
+  @Override
+  public void onConfigurationChanged(@NonNull Configuration newConfig) {
+  }
+}
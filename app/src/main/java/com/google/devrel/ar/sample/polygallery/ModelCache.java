@@ -0,0 +1,650 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local cache of the models, each packed into a single binary glTF (GLB) file.
+ * <p>
+ * A model from Poly is a glTF JSON file referencing separate buffer and image files.  When a model
+ * is first requested, the JSON and its resources are downloaded and packed into one GLB file:
+ * the buffers and images are concatenated into the binary chunk and the JSON is rewritten to
+ * reference them by buffer view.  Loading the model then opens one file, read through a memory
+ * mapping.
+ * <p>
+ * The packed files are kept up to a total size, the least recently used files are deleted when
+ * a new model pushes the cache over it.  The files of the models being built are pinned and
+ * never deleted.
+ * <p>
+ * Before packing, textures larger than the configured maximum dimension are scaled down and
+ * recompressed, in parallel, since a phone in AR does not need them at full size.
+ */
+public class ModelCache {
+  private static final String TAG = "ModelCache";
+
+  // Deadline for downloading each file of a model.
+  private static final long DOWNLOAD_DEADLINE_MS = 60000;
+
+  // GLB container constants, see the "GLB File Format Specification" section of
+  // https://github.com/KhronosGroup/glTF/tree/master/specification/2.0
+  private static final int GLB_MAGIC = 0x46546C67;
+  private static final int GLB_VERSION = 2;
+  private static final int CHUNK_JSON = 0x4E4F534A;
+  private static final int CHUNK_BIN = 0x004E4942;
+  private static final int HEADER_LENGTH = 12;
+  private static final int CHUNK_HEADER_LENGTH = 8;
+
+  private static ModelCache instance;
+
+  // Runs the packing of the models.
+  private static final ExecutorService ingestExecutor = Executors.newFixedThreadPool(
+          Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "ModelIngest");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // The total bytes saved by scaling down textures.
+  private static final AtomicLong textureBytesSaved = new AtomicLong();
+
+  private final File directory;
+  private final Handler handler;
+  private final TextureDownscaler textureDownscaler;
+
+  // The most bytes kept in the directory.
+  private final long maxBytes;
+
+  // The models being ingested, by key.  Guarded by this.
+  private final Map<String, CompletableFuture<File>> ingests = new HashMap<>();
+
+  // The number of builds using each file, see get() and release().  Guarded by this.
+  private final Map<File, Integer> pins = new HashMap<>();
+
+  private ModelCache(File directory, Handler handler, int maxTextureDimension, long maxBytes) {
+    this.directory = directory;
+    this.handler = handler;
+    this.textureDownscaler = new TextureDownscaler(maxTextureDimension);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Creates the cache in the cache directory of the app.  Until this is called,
+   * {@link #getInstance()} returns null and models are loaded from their URL.
+   *
+   * @param context the context of the app.
+   * @param handler a background handler, used for the download callbacks.
+   */
+  public static synchronized void initialize(Context context, Handler handler) {
+    File directory = new File(context.getCacheDir(), "models");
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.e(TAG, "Cannot create the model cache in " + directory);
+      return;
+    }
+    ModelCache cache = new ModelCache(directory, handler,
+            context.getResources().getInteger(R.integer.max_texture_dimension),
+            context.getResources().getInteger(R.integer.model_cache_size_mb) * 1024L * 1024L);
+    // The limit may have been lowered since the files were written.
+    ingestExecutor.execute(() -> cache.trimToSize(null));
+    instance = cache;
+  }
+
+  /**
+   * Returns the cache, or null if it is not initialized.
+   */
+  public static synchronized ModelCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Returns the total number of bytes saved by scaling down textures.
+   */
+  public static long getTextureBytesSaved() {
+    return textureBytesSaved.get();
+  }
+
+  /**
+   * Returns the packed model, downloading and packing it if it is not cached.  The file is
+   * pinned so it is not evicted while the model is built from it, {@link #release(String)} must
+   * be called once the build is done, whether this succeeded or not.
+   *
+   * @param key      the key of the asset.
+   * @param modelUrl the URL of the glTF file.
+   * @param parent   the trace span the ingest is part of, may be null.
+   * @param progress the listener for the download progress of all the files of the model, may
+   *                 be null.  It is only called if this call starts the download.
+   * @return the future holding the GLB file.
+   */
+  public CompletableFuture<File> get(String key, String modelUrl, Tracer.Span parent,
+                                     AsyncHttpRequest.ProgressListener progress) {
+    File file = getFile(key);
+    synchronized (this) {
+      Integer count = pins.get(file);
+      pins.put(file, count != null ? count + 1 : 1);
+      CompletableFuture<File> ingest = ingests.get(key);
+      if (ingest != null) {
+        return ingest;
+      }
+      if (file.isFile()) {
+        // The modification time orders the files for eviction.
+        file.setLastModified(System.currentTimeMillis());
+        return CompletableFuture.completedFuture(file);
+      }
+      ingest = ingest(modelUrl, file, parent, new Progress(progress));
+      ingests.put(key, ingest);
+      ingest.whenComplete((result, throwable) -> {
+        synchronized (this) {
+          ingests.remove(key);
+        }
+      });
+      return ingest;
+    }
+  }
+
+  /**
+   * Unpins the file of the model, pinned by {@link #get}.
+   *
+   * @param key the key of the asset.
+   */
+  public synchronized void release(String key) {
+    File file = getFile(key);
+    Integer count = pins.get(file);
+    if (count == null) {
+      return;
+    }
+    if (count > 1) {
+      pins.put(file, count - 1);
+    } else {
+      pins.remove(file);
+    }
+  }
+
+  // Returns the file of a model.  Asset keys look like "assets/ID".
+  private File getFile(String key) {
+    return new File(directory, key.replaceAll("[^A-Za-z0-9_-]", "_") + ".glb");
+  }
+
+  /**
+   * Returns a source of input streams reading the file through a memory mapping.  This avoids
+   * reading the file through intermediate buffers, but it is not zero-copy: Sceneform reads the
+   * whole stream into its own buffer when it builds the renderable.
+   */
+  public static Callable<InputStream> openMapped(File file) {
+    return () -> {
+      try (FileInputStream input = new FileInputStream(file);
+           FileChannel channel = input.getChannel()) {
+        // The mapping stays valid after the channel is closed.
+        return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size()));
+      }
+    };
+  }
+
+  // Downloads the glTF file and its resources and packs them.
+  private CompletableFuture<File> ingest(String modelUrl, File file, Tracer.Span parent,
+                                         Progress progress) {
+    Tracer.Span span = Tracer.begin("model.ingest", parent);
+    long start = SystemClock.elapsedRealtime();
+    CompletableFuture<File> result = download(modelUrl, span, progress)
+            .thenCompose(body -> {
+              JSONObject gltf;
+              try {
+                gltf = new JSONObject(new String(body, Charset.forName("UTF-8")));
+              } catch (JSONException e) {
+                throw new CompletionException(new IOException("Invalid glTF " + modelUrl, e));
+              }
+              Map<String, String> mimeTypes = new HashMap<>();
+              return downloadResources(gltf, modelUrl, span, progress)
+                      .thenCompose(resources -> downscaleTextures(gltf, resources, mimeTypes,
+                              modelUrl, span).thenApply(ignored -> resources))
+                      .thenApplyAsync(resources -> {
+                        Tracer.Span packSpan = Tracer.begin("model.pack", span);
+                        try {
+                          pack(gltf, resources, mimeTypes, file);
+                          trimToSize(file);
+                          return file;
+                        } catch (IOException | JSONException e) {
+                          throw new CompletionException(e);
+                        } finally {
+                          packSpan.end();
+                        }
+                      }, ingestExecutor);
+            });
+    result.whenComplete((packed, throwable) -> {
+      span.end();
+      if (throwable == null) {
+        Log.d(TAG, "Packed " + modelUrl + " into " + packed.length() + " bytes in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Deletes the least recently used packed files until the cache is within its size limit.
+   *
+   * @param keep a file that is not deleted, such as the file just packed, may be null.
+   */
+  private void trimToSize(File keep) {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".glb"));
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File file : files) {
+      if (total <= maxBytes) {
+        break;
+      }
+      if (file.equals(keep)) {
+        continue;
+      }
+      long length = file.length();
+      boolean deleted;
+      synchronized (this) {
+        // Checked under the lock get() pins the files with, so a file cannot be returned by
+        // get() and deleted here at the same time.
+        deleted = !pins.containsKey(file) && file.delete();
+      }
+      if (deleted) {
+        total -= length;
+        Log.d(TAG, "Evicted " + file.getName() + " (" + length + " bytes)");
+      }
+    }
+  }
+
+  // Downloads the buffers and images referenced by URI, by URI.
+  private CompletableFuture<Map<String, byte[]>> downloadResources(JSONObject gltf,
+                                                                   String modelUrl,
+                                                                   Tracer.Span span,
+                                                                   Progress progress) {
+    Map<String, CompletableFuture<byte[]>> downloads = new HashMap<>();
+    for (String uri : getResourceUris(gltf)) {
+      if (!downloads.containsKey(uri) && !uri.startsWith("data:")) {
+        downloads.put(uri, download(URI.create(modelUrl).resolve(uri).toString(), span,
+                progress));
+      }
+    }
+    return CompletableFuture.allOf(downloads.values().toArray(new CompletableFuture[0]))
+            .thenApply(ignored -> {
+              Map<String, byte[]> resources = new HashMap<>();
+              for (Map.Entry<String, CompletableFuture<byte[]>> entry : downloads.entrySet()) {
+                resources.put(entry.getKey(), entry.getValue().join());
+              }
+              return resources;
+            });
+  }
+
+  /**
+   * Scales down the images that are too large, in parallel.  The images are replaced in the
+   * resources, and their new MIME type is added to the MIME types, by URI.
+   */
+  private CompletableFuture<Void> downscaleTextures(JSONObject gltf, Map<String, byte[]> resources,
+                                                    Map<String, String> mimeTypes,
+                                                    String modelUrl, Tracer.Span span) {
+    Tracer.Span texturesSpan = Tracer.begin("model.textures", span);
+    Map<String, CompletableFuture<TextureDownscaler.Result>> results = new HashMap<>();
+    Set<Integer> baseColorImages = getBaseColorImages(gltf);
+    JSONArray images = gltf.optJSONArray("images");
+    for (int i = 0; images != null && i < images.length(); i++) {
+      JSONObject image = images.optJSONObject(i);
+      String uri = image != null ? image.optString("uri", null) : null;
+      byte[] data = uri != null ? resources.get(uri) : null;
+      if (data != null && !results.containsKey(uri)) {
+        boolean lossy = baseColorImages.contains(i);
+        results.put(uri, CompletableFuture.supplyAsync(
+                () -> textureDownscaler.downscale(data, lossy), ingestExecutor));
+      }
+    }
+    return CompletableFuture.allOf(results.values().toArray(new CompletableFuture[0]))
+            .thenRun(() -> {
+              long saved = 0;
+              for (Map.Entry<String, CompletableFuture<TextureDownscaler.Result>> entry
+                      : results.entrySet()) {
+                TextureDownscaler.Result result = entry.getValue().join();
+                if (result != null) {
+                  saved += resources.get(entry.getKey()).length - result.data.length;
+                  resources.put(entry.getKey(), result.data);
+                  mimeTypes.put(entry.getKey(), result.mimeType);
+                }
+              }
+              textureBytesSaved.addAndGet(saved);
+              texturesSpan.end();
+              Log.d(TAG, "Scaled down " + mimeTypes.size() + " of " + results.size()
+                      + " textures of " + modelUrl + ", saving " + saved + " bytes");
+            });
+  }
+
+  // Returns the indexes of the images only used as base color textures.  An image also used by
+  // another texture slot, such as a normal map, is not in the set.
+  private static Set<Integer> getBaseColorImages(JSONObject gltf) {
+    Set<Integer> baseColor = new HashSet<>();
+    Set<Integer> other = new HashSet<>();
+    JSONArray materials = gltf.optJSONArray("materials");
+    for (int i = 0; materials != null && i < materials.length(); i++) {
+      JSONObject material = materials.optJSONObject(i);
+      if (material == null) {
+        continue;
+      }
+      JSONObject pbr = material.optJSONObject("pbrMetallicRoughness");
+      if (pbr != null) {
+        addImage(gltf, pbr.optJSONObject("baseColorTexture"), baseColor);
+        addImage(gltf, pbr.optJSONObject("metallicRoughnessTexture"), other);
+      }
+      addImage(gltf, material.optJSONObject("normalTexture"), other);
+      addImage(gltf, material.optJSONObject("occlusionTexture"), other);
+      addImage(gltf, material.optJSONObject("emissiveTexture"), other);
+    }
+    baseColor.removeAll(other);
+    return baseColor;
+  }
+
+  // Adds the image of a texture reference to the set.
+  private static void addImage(JSONObject gltf, JSONObject textureInfo, Set<Integer> images) {
+    JSONArray textures = gltf.optJSONArray("textures");
+    int index = textureInfo != null ? textureInfo.optInt("index", -1) : -1;
+    JSONObject texture = textures != null ? textures.optJSONObject(index) : null;
+    if (texture != null && texture.has("source")) {
+      images.add(texture.optInt("source"));
+    }
+  }
+
+  // Returns the URIs of the buffers and images.
+  private static List<String> getResourceUris(JSONObject gltf) {
+    List<String> uris = new ArrayList<>();
+    for (String name : new String[]{"buffers", "images"}) {
+      JSONArray array = gltf.optJSONArray(name);
+      for (int i = 0; array != null && i < array.length(); i++) {
+        JSONObject object = array.optJSONObject(i);
+        if (object != null && object.has("uri")) {
+          uris.add(object.optString("uri"));
+        }
+      }
+    }
+    return uris;
+  }
+
+  private CompletableFuture<byte[]> download(String url, Tracer.Span span, Progress progress) {
+    CompletableFuture<byte[]> future = new CompletableFuture<>();
+    AsyncHttpRequest request = new AsyncHttpRequest(url, handler,
+            new AsyncHttpRequest.CompletionListener() {
+              @Override
+              public void onHttpRequestSuccess(byte[] responseBody) {
+                future.complete(responseBody);
+              }
+
+              @Override
+              public void onHttpRequestFailure(int statusCode, String message,
+                                               Exception exception) {
+                future.completeExceptionally(exception != null ? exception
+                        : new IOException(message));
+              }
+            });
+    request.setDeadline(DOWNLOAD_DEADLINE_MS);
+    request.setTraceParent(span);
+    request.setProgressListener(progress.forDownload());
+    request.send();
+    return future;
+  }
+
+  // Returns the content of a resource, decoding data URIs.
+  private static byte[] getResource(String uri, Map<String, byte[]> resources)
+          throws IOException {
+    if (uri.startsWith("data:")) {
+      int comma = uri.indexOf(',');
+      if (comma < 0 || !uri.substring(0, comma).endsWith(";base64")) {
+        throw new IOException("Unsupported data URI");
+      }
+      return Base64.decode(uri.substring(comma + 1), Base64.DEFAULT);
+    }
+    byte[] data = resources.get(uri);
+    if (data == null) {
+      throw new IOException("Missing resource " + uri);
+    }
+    return data;
+  }
+
+  /**
+   * Packs the glTF and its resources into a GLB file.  All the buffers and images are placed in
+   * the binary chunk, aligned to 4 bytes, and the JSON is updated to reference them there.  The
+   * MIME types override the type of the images that were recompressed, by URI.
+   */
+  private static void pack(JSONObject gltf, Map<String, byte[]> resources,
+                           Map<String, String> mimeTypes, File file)
+          throws IOException, JSONException {
+    List<ByteBuffer> parts = new ArrayList<>();
+    long binLength = 0;
+
+    // Place the buffers and point the buffer views at their new offsets.
+    JSONArray buffers = gltf.optJSONArray("buffers");
+    long[] bufferOffsets = new long[buffers != null ? buffers.length() : 0];
+    for (int i = 0; i < bufferOffsets.length; i++) {
+      JSONObject buffer = buffers.getJSONObject(i);
+      byte[] data = getResource(buffer.getString("uri"), resources);
+      binLength = addPart(parts, binLength, data);
+      bufferOffsets[i] = binLength - data.length;
+    }
+    JSONArray bufferViews = gltf.optJSONArray("bufferViews");
+    if (bufferViews == null) {
+      bufferViews = new JSONArray();
+      gltf.put("bufferViews", bufferViews);
+    }
+    for (int i = 0; i < bufferViews.length(); i++) {
+      JSONObject bufferView = bufferViews.getJSONObject(i);
+      bufferView.put("byteOffset", bufferView.optLong("byteOffset", 0)
+              + bufferOffsets[bufferView.getInt("buffer")]);
+      bufferView.put("buffer", 0);
+    }
+
+    // Place the images, each in a new buffer view.
+    JSONArray images = gltf.optJSONArray("images");
+    for (int i = 0; images != null && i < images.length(); i++) {
+      JSONObject image = images.getJSONObject(i);
+      if (!image.has("uri")) {
+        continue;
+      }
+      String uri = image.getString("uri");
+      byte[] data = getResource(uri, resources);
+      binLength = addPart(parts, binLength, data);
+      JSONObject bufferView = new JSONObject();
+      bufferView.put("buffer", 0);
+      bufferView.put("byteOffset", binLength - data.length);
+      bufferView.put("byteLength", data.length);
+      bufferViews.put(bufferView);
+      image.remove("uri");
+      image.put("bufferView", bufferViews.length() - 1);
+      if (mimeTypes.containsKey(uri)) {
+        image.put("mimeType", mimeTypes.get(uri));
+      } else if (!image.has("mimeType")) {
+        image.put("mimeType", getMimeType(uri));
+      }
+    }
+
+    JSONArray packedBuffers = new JSONArray();
+    if (binLength > 0) {
+      packedBuffers.put(new JSONObject().put("byteLength", binLength));
+    }
+    gltf.put("buffers", packedBuffers);
+
+    byte[] json = gltf.toString().getBytes(Charset.forName("UTF-8"));
+    int jsonPadding = padding(json.length);
+    int binPadding = padding(binLength);
+    long totalLength = HEADER_LENGTH + CHUNK_HEADER_LENGTH + json.length + jsonPadding
+            + (binLength > 0 ? CHUNK_HEADER_LENGTH + binLength + binPadding : 0);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + CHUNK_HEADER_LENGTH)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(GLB_MAGIC).putInt(GLB_VERSION).putInt((int) totalLength);
+    header.putInt(json.length + jsonPadding).putInt(CHUNK_JSON);
+    header.flip();
+    List<ByteBuffer> output = new ArrayList<>();
+    output.add(header);
+    output.add(ByteBuffer.wrap(json));
+    // The JSON chunk is padded with spaces and the binary chunk with zeros.
+    output.add(ByteBuffer.wrap("   ".getBytes(Charset.forName("UTF-8")), 0, jsonPadding));
+    if (binLength > 0) {
+      ByteBuffer binHeader = ByteBuffer.allocate(CHUNK_HEADER_LENGTH)
+              .order(ByteOrder.LITTLE_ENDIAN);
+      binHeader.putInt((int) (binLength + binPadding)).putInt(CHUNK_BIN);
+      binHeader.flip();
+      output.add(binHeader);
+      output.addAll(parts);
+      output.add(ByteBuffer.allocate(binPadding));
+    }
+
+    // Write to a temporary file first so a partial file is never taken for a cached model.
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp);
+         FileChannel channel = stream.getChannel()) {
+      ByteBuffer[] buffersToWrite = output.toArray(new ByteBuffer[0]);
+      long remaining = totalLength;
+      while (remaining > 0) {
+        remaining -= channel.write(buffersToWrite);
+      }
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      throw new IOException("Cannot write " + file);
+    }
+  }
+
+  // Appends the data after padding the binary chunk to 4 bytes, returns the new chunk length.
+  private static long addPart(List<ByteBuffer> parts, long binLength, byte[] data) {
+    int padding = padding(binLength);
+    if (padding > 0) {
+      parts.add(ByteBuffer.allocate(padding));
+    }
+    parts.add(ByteBuffer.wrap(data));
+    return binLength + padding + data.length;
+  }
+
+  private static int padding(long length) {
+    return (int) ((4 - length % 4) % 4);
+  }
+
+  private static String getMimeType(String uri) {
+    String lower = uri.toLowerCase(Locale.US);
+    return lower.endsWith(".jpg") || lower.endsWith(".jpeg") ? "image/jpeg" : "image/png";
+  }
+
+  // Sums the progress of the downloads of a model.  Downloads whose size is not known yet count
+  // what they received so far as expected.
+  private static class Progress {
+    private final AsyncHttpRequest.ProgressListener listener;
+    private final List<long[]> downloads = new ArrayList<>();
+
+    Progress(AsyncHttpRequest.ProgressListener listener) {
+      this.listener = listener;
+    }
+
+    // Returns the listener for one more download.
+    synchronized AsyncHttpRequest.ProgressListener forDownload() {
+      long[] download = {0, -1};
+      downloads.add(download);
+      return (bytesReceived, bytesExpected) -> {
+        long received = 0;
+        long expected = 0;
+        synchronized (this) {
+          download[0] = bytesReceived;
+          download[1] = bytesExpected;
+          for (long[] entry : downloads) {
+            received += entry[0];
+            expected += Math.max(entry[0], entry[1]);
+          }
+        }
+        if (listener != null) {
+          listener.onHttpRequestProgress(received, expected);
+        }
+      };
+    }
+  }
+
+  // Reads a byte buffer, used to read the memory mapped files.
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
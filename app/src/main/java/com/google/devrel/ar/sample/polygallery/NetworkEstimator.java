@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.util.Locale;
+
+/**
+ * Process wide estimate of the network throughput and latency, fed by the transfers of
+ * {@link AsyncHttpRequest}.  Both are exponentially weighted moving averages of the recent
+ * transfers.
+ */
+public final class NetworkEstimator {
+  // Weight of the newest sample in the averages.
+  private static final double ALPHA = 0.3;
+
+  // Transfers smaller than this are dominated by latency, so they do not update the throughput.
+  private static final long MIN_THROUGHPUT_BYTES = 16 * 1024;
+
+  // Guarded by NetworkEstimator.class.  Negative until the first sample.
+  private static double throughput = -1;
+  private static double latency = -1;
+
+  private NetworkEstimator() {
+  }
+
+  /**
+   * Records a completed transfer.
+   *
+   * @param latencyMillis  the time from opening the connection to receiving the response
+   *                       headers.
+   * @param bytes          the number of body bytes received over the network.
+   * @param transferMillis the time taken to receive the body.
+   */
+  static synchronized void recordTransfer(long latencyMillis, long bytes, long transferMillis) {
+    latency = latency < 0 ? latencyMillis : latency + ALPHA * (latencyMillis - latency);
+    if (bytes >= MIN_THROUGHPUT_BYTES) {
+      double sample = bytes * 1000.0 / Math.max(transferMillis, 1);
+      throughput = throughput < 0 ? sample : throughput + ALPHA * (sample - throughput);
+    }
+  }
+
+  /**
+   * The estimated throughput in bytes per second, or -1 if not known yet.
+   */
+  public static synchronized long getThroughputBytesPerSecond() {
+    return (long) throughput;
+  }
+
+  /**
+   * The estimated time to the response headers in milliseconds, or -1 if not known yet.
+   */
+  public static synchronized long getLatencyMillis() {
+    return (long) latency;
+  }
+
+  /**
+   * Forgets the estimates, for example when the network changes.
+   */
+  public static synchronized void reset() {
+    throughput = -1;
+    latency = -1;
+  }
+
+  /**
+   * Returns a one line summary of the estimates, suitable for logging.
+   */
+  public static String summary() {
+    return String.format(Locale.US, "throughput=%dB/s latency=%dms",
+            getThroughputBytesPerSecond(), getLatencyMillis());
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Formats the node info shown in the overlay every frame.
+ * <p>
+ * This produces the same text as formatting each value with {@code "%.02f"}, without the
+ * parsing and allocations of String.format.  The builder is reused between calls, so an
+ * instance must only be used from one thread.  It only depends on the JDK.
+ */
+public class NodeInfoFormatter {
+  private final StringBuilder builder = new StringBuilder(96);
+  private final char decimalSeparator;
+
+  public NodeInfoFormatter() {
+    this(DecimalFormatSymbols.getInstance().getDecimalSeparator());
+  }
+
+  public NodeInfoFormatter(char decimalSeparator) {
+    this.decimalSeparator = decimalSeparator;
+  }
+
+  /**
+   * Formats the scale, size and direction of a node, one per line.
+   */
+  public String format(float scaleX, float scaleY, float scaleZ,
+                       float sizeX, float sizeY, float sizeZ,
+                       float dirX, float dirY, float dirZ) {
+    builder.setLength(0);
+    appendTriple("scale: (", scaleX, scaleY, scaleZ).append('\n');
+    appendTriple("size: (", sizeX, sizeY, sizeZ).append('\n');
+    appendTriple("dir: (", dirX, dirY, dirZ);
+    return builder.toString();
+  }
+
+  private StringBuilder appendTriple(String label, float x, float y, float z) {
+    builder.append(label);
+    appendFixed2(x);
+    builder.append(", ");
+    appendFixed2(y);
+    builder.append(", ");
+    appendFixed2(z);
+    return builder.append(')');
+  }
+
+  // Appends the value with two decimals, rounding half up like Formatter does.
+  private void appendFixed2(float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      builder.append(value > 0 ? "Infinity" : value < 0 ? "-Infinity" : "NaN");
+      return;
+    }
+    if (Math.copySign(1f, value) < 0) {
+      builder.append('-');
+    }
+    long hundredths = Math.round(Math.abs((double) value) * 100);
+    builder.append(hundredths / 100).append(decimalSeparator);
+    long fraction = hundredths % 100;
+    if (fraction < 10) {
+      builder.append('0');
+    }
+    builder.append(fraction);
+  }
+}
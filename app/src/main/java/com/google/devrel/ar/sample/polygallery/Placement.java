@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+
+/**
+ * A model placed in the scene.  In AR mode the model node is attached to an anchor node, in
+ * non-AR mode it is attached to the scene directly.  Each placement has its own info card.
+ */
+public class Placement {
+  private final GalleryItem item;
+  private final AnchorNode anchorNode;
+  private final Node modelNode;
+  private InfoCard infoCard;
+  private boolean detached;
+
+  // The model renderable, once loaded, and its bounds.
+  private ModelRenderable renderable;
+  private RenderableBounds bounds;
+
+  // Level of detail state, managed by the LodController.
+  private LodController.Level level = LodController.Level.FULL;
+  private BillboardNode billboardNode;
+
+  Placement(GalleryItem item, AnchorNode anchorNode, Node modelNode) {
+    this.item = item;
+    this.anchorNode = anchorNode;
+    this.modelNode = modelNode;
+  }
+
+  /**
+   * The gallery item of the placed model.
+   */
+  public GalleryItem getItem() {
+    return item;
+  }
+
+  /**
+   * The anchor node, or null in non-AR mode.
+   */
+  public AnchorNode getAnchorNode() {
+    return anchorNode;
+  }
+
+  public Node getModelNode() {
+    return modelNode;
+  }
+
+  /**
+   * The info card node, or null if not attached yet.
+   */
+  public InfoCard getInfoCard() {
+    return infoCard;
+  }
+
+  void setInfoCard(InfoCard infoCard) {
+    this.infoCard = infoCard;
+  }
+
+  /**
+   * The model renderable, or null if it is not loaded yet.  The model node does not show it
+   * when the placement is displayed at a lower level of detail.
+   */
+  public ModelRenderable getRenderable() {
+    return renderable;
+  }
+
+  void setRenderable(ModelRenderable renderable) {
+    this.renderable = renderable;
+    this.bounds = RenderableBounds.of(renderable);
+  }
+
+  /**
+   * The bounds of the model renderable, or null if it is not loaded yet.
+   */
+  public RenderableBounds getBounds() {
+    return bounds;
+  }
+
+  /**
+   * The level of detail the placement is currently displayed at.
+   */
+  public LodController.Level getLevel() {
+    return level;
+  }
+
+  void setLevel(LodController.Level level) {
+    this.level = level;
+  }
+
+  BillboardNode getBillboardNode() {
+    return billboardNode;
+  }
+
+  void setBillboardNode(BillboardNode billboardNode) {
+    this.billboardNode = billboardNode;
+  }
+
+  /**
+   * Returns true if the placement was removed from the scene.
+   */
+  public boolean isDetached() {
+    return detached;
+  }
+
+  /**
+   * Removes the nodes of this placement from the scene and detaches the anchor.
+   */
+  void detach() {
+    detached = true;
+    if (infoCard != null) {
+      infoCard.setParent(null);
+    }
+    modelNode.setParent(null);
+    if (anchorNode != null) {
+      if (anchorNode.getAnchor() != null) {
+        anchorNode.getAnchor().detach();
+      }
+      anchorNode.setParent(null);
+    }
+  }
+}
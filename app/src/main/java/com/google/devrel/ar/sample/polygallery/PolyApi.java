@@ -21,17 +21,42 @@ import android.util.Log;
 
 /**
  * Methods that call the Poly API.
+ * <p>
+ * The requests are sent through an {@link HttpTransport} to a configurable base URL, so the API
+ * can be pointed at a local stand-in server such as the LocalPolyServer of debug builds.
  */
 public class PolyApi {
   private static final String TAG = "PolyAPI";
 
-  // The API host.
-  private static final String HOST = "poly.googleapis.com";
+  /**
+   * The base URL of the Poly API.
+   */
+  public static final String DEFAULT_BASE_URL = "https://poly.googleapis.com";
+
+  // Deadlines of the API requests, including retries.
+  private static final long GET_ASSET_DEADLINE_MS = 15000;
+  private static final long LIST_ASSETS_DEADLINE_MS = 20000;
 
   private final String apiKey;
+  private final Uri baseUrl;
+  private final HttpTransport transport;
 
   public PolyApi(String apiKey) {
+    this(apiKey, DEFAULT_BASE_URL, HttpTransport.ASYNC);
+  }
+
+  /**
+   * Creates an API sending its requests through the given transport.
+   *
+   * @param apiKey    the API key.
+   * @param baseUrl   the scheme and authority of the API, for example
+   *                  {@link #DEFAULT_BASE_URL}.
+   * @param transport the transport used to send the requests.
+   */
+  public PolyApi(String apiKey, String baseUrl, HttpTransport transport) {
     this.apiKey = apiKey;
+    this.baseUrl = Uri.parse(baseUrl);
+    this.transport = transport;
   }
 
   /**
@@ -43,11 +68,22 @@ public class PolyApi {
    */
   public void GetAsset(String assetId, Handler handler,
                               AsyncHttpRequest.CompletionListener completionListener) {
+    GetAsset(assetId, null, handler, completionListener);
+  }
+
+  /**
+   * Gets the asset with the given ID, tracing the request under the given span.
+   *
+   * @param assetId            The ID of the asset to get.
+   * @param parent             The trace span the request is part of, may be null.
+   * @param handler            The handler on which to call the listener.
+   * @param completionListener The listener to call when the asset request is completed.
+   */
+  public void GetAsset(String assetId, Tracer.Span parent, Handler handler,
+                       AsyncHttpRequest.CompletionListener completionListener) {
     // Build the URL to the asset. It should be something like:
     //   https://poly.googleapis.com/v1/assets/ASSET_ID_HERE?key=YOUR_API_KEY_HERE
-    String url = new Uri.Builder()
-            .scheme("https")
-            .authority(HOST)
+    String url = baseUrl.buildUpon()
             .appendPath("v1")
             .appendPath("assets")
             .appendPath(assetId)
@@ -55,17 +91,23 @@ public class PolyApi {
             .build().toString();
 
     // Send an asynchronous request.
-    AsyncHttpRequest request = new AsyncHttpRequest(url, handler, completionListener);
-    request.send();
+    transport.get(url, GET_ASSET_DEADLINE_MS, parent, handler, completionListener);
   }
 
   public  void ListAssets(String keywords, boolean curatedOnly, String category, Handler handler,
                                 AsyncHttpRequest.CompletionListener completionListener) {
+    ListAssets(keywords, curatedOnly, category, null, handler, completionListener);
+  }
+
+  /**
+   * Lists the assets matching the query, tracing the request under the given span.
+   */
+  public void ListAssets(String keywords, boolean curatedOnly, String category,
+                         Tracer.Span parent, Handler handler,
+                         AsyncHttpRequest.CompletionListener completionListener) {
     // Build the URL to the asset. It should be something like:
     //   https://poly.googleapis.com/v1/assets?key=YOUR_API_KEY_HERE
-    Uri.Builder urlBuilder = new Uri.Builder()
-            .scheme("https")
-            .authority(HOST)
+    Uri.Builder urlBuilder = baseUrl.buildUpon()
             .appendPath("v1")
             .appendPath("assets")
             .appendQueryParameter("key", apiKey)
@@ -82,8 +124,7 @@ public class PolyApi {
     }
     String url = urlBuilder.build().toString();
     // Send an asynchronous request.
-    AsyncHttpRequest request = new AsyncHttpRequest(url, handler, completionListener);
-    request.send();
+    transport.get(url, LIST_ASSETS_DEADLINE_MS, parent, handler, completionListener);
 
   }
 }
@@ -23,11 +23,13 @@ import android.content.DialogInterface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
@@ -44,11 +46,20 @@ import com.google.ar.sceneform.Scene;
 import com.google.ar.sceneform.SceneView;
 import com.google.ar.sceneform.collision.Ray;
 import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.TransformableNode;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * This is a simple example that shows how to create an augmented reality (AR) application using the
@@ -61,22 +72,80 @@ public class PolyGalleryActivity extends AppCompatActivity {
   private RecyclerView gallery;
   private TextView model_info;
   private SceneContext sceneContext;
+  private final FrameStats frameStats = new FrameStats();
 
   private Handler mBackgroundThreadHandler;
   private Fragment fragment;
 
   private PolyApi polyApi;
 
+  // Fetches the details of the recently placed assets by ID, in batches.
+  private AssetBatcher assetBatcher;
+  private RecentAssets recentAssets;
+
+  // Stand-in for the Poly API, when enabled in the configuration.
+  private LocalServerLauncher localServer;
+
+  private StartupTimer startupTimer;
+
+  // Attaches loaded models within the frame budget, ahead of other queued main thread work.
+  private final Executor attachExecutor =
+          FrameScheduler.getInstance().executor(FrameScheduler.Priority.ATTACH);
+
+  // Limits and supersedes the model builds started by taps.
+  private RenderableBuildQueue renderableBuildQueue;
+
+  // Releases cached data when memory is low.
+  private final MemoryGovernor memoryGovernor = new MemoryGovernor();
+
+  // Models estimated to be larger than this are only loaded after the user confirms.
+  private long modelSizeBudget;
+
+  // The last load progress shown, to only format the text when it changes.
+  private GalleryItem progressItem;
+  private long progressBytes = -1;
+  private String progressText;
+
+  // The keywords and the results of the search fetched during startup, until used.
+  private String prefetchedKeywords;
+  private CompletableFuture<byte[]> prefetchedSearch;
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
+    Tracer.setEnabled(getResources().getBoolean(R.bool.enable_tracing));
+    startupTimer = new StartupTimer();
+
+    // Create a background thread, where we will do the heavy lifting so we don't block the main
+    // thread.  It is started first so the work below can be handed off to it while the UI is
+    // built.
+    HandlerThread mBackgroundThread = new HandlerThread("Worker");
+    mBackgroundThread.start();
+    // Handler for the background thread, to which we post background thread tasks.
+    mBackgroundThreadHandler = new Handler(mBackgroundThread.getLooper());
+
     setContentView(R.layout.activity_main);
+    startupTimer.mark("content");
+
+    // Opening the stored thumbnail previews and creating the model cache touch the disk, so it is
+    // done on the worker.
+    mBackgroundThreadHandler.post(() -> {
+      ThumbnailPreviews.initialize(this);
+      ModelCache.initialize(this, mBackgroundThreadHandler);
+    });
 
     // Load the Poly api key.  You need to change this to match your key from the API console.
     String apiKey = getString(R.string.poly_api_key);
+    String baseUrl = getString(R.string.poly_base_url);
+    boolean useLocalServer = getResources().getBoolean(R.bool.use_local_poly_server);
+    if (useLocalServer) {
+      baseUrl = startLocalPolyServer();
+      // Without the server, the app uses Poly and needs the API key.
+      useLocalServer = localServer != null;
+    }
     // This test is just for sample purposes, in an actual application, you should know the
     // API key is set.
-    if("YOUR_POLY_API_KEY_HERE".equals(apiKey) || apiKey.isEmpty()) {
+    if (!useLocalServer && ("YOUR_POLY_API_KEY_HERE".equals(apiKey) || apiKey.isEmpty())) {
       String msg = "You need to configure an API key for the Poly API before running this sample";
       new AlertDialog.Builder(this).setTitle("Error").
               setMessage(msg)
@@ -86,14 +155,27 @@ public class PolyGalleryActivity extends AppCompatActivity {
       return;
     }
 
-    polyApi = new PolyApi(apiKey);
+    polyApi = new PolyApi(apiKey, baseUrl, HttpTransport.ASYNC);
+    assetBatcher = new AssetBatcher(polyApi, mBackgroundThreadHandler);
+    recentAssets = new RecentAssets(this);
+    modelSizeBudget = getResources().getInteger(R.integer.model_size_budget_kb) * 1024L;
+    renderableBuildQueue = new RenderableBuildQueue(
+            getResources().getInteger(R.integer.max_concurrent_model_builds));
+
+    // Fetch the results of the default search while ARCore initializes.  This also warms up
+    // the network stack and the connection to the server.
+    prefetchSearch(getString(R.string.default_search_keywords));
 
     gallery = findViewById(R.id.recyclerView);
     intializeGallery(gallery);
 
     findViewById(R.id.search).setOnClickListener(this::onSearch);
 
+    // This is a text overlay.
+    model_info = findViewById(R.id.model_info);
+
     sceneContext = new SceneContext(this);
+    registerMemoryGovernor();
 
     Switch arToggle = findViewById(R.id.ar_mode_toggle);
     arToggle.setOnCheckedChangeListener((compoundButton, checked) -> {
@@ -107,16 +189,207 @@ public class PolyGalleryActivity extends AppCompatActivity {
     // Start in AR mode.
     arToggle.setChecked(true);
     initializeARMode();
+    startupTimer.mark("scene");
+
+    // The info cards are only needed once a model is placed, so they are built once the main
+    // thread is idle instead of delaying the first frame.
+    Looper.myQueue().addIdleHandler(() -> {
+      sceneContext.warmInfoCards();
+      startupTimer.mark("deferred");
+      return false;
+    });
+  }
 
-    // This is a text overlay.
-    model_info = findViewById(R.id.model_info);
+  @Override
+  protected void onPause() {
+    super.onPause();
+    if (Tracer.isEnabled() && mBackgroundThreadHandler != null) {
+      mBackgroundThreadHandler.post(this::writeTraces);
+    }
+  }
 
-    // Create a background thread, where we will do the heavy lifting.
-    // Our background thread, which does all of the heavy lifting so we don't block the main thread.
-    HandlerThread mBackgroundThread = new HandlerThread("Worker");
-    mBackgroundThread.start();
-    // Handler for the background thread, to which we post background thread tasks.
-    mBackgroundThreadHandler = new Handler(mBackgroundThread.getLooper());
+  /**
+   * Writes the recorded trace spans and their histograms to the traces directory of the app's
+   * external files directory, along with the request metrics.
+   */
+  private void writeTraces() {
+    File dir = getExternalFilesDir("traces");
+    if (dir == null) {
+      return;
+    }
+    try (Writer trace = new FileWriter(new File(dir, "trace.json"));
+         Writer histograms = new FileWriter(new File(dir, "histograms.json"))) {
+      Tracer.writeChromeTrace(trace);
+      Tracer.writeHistograms(histograms);
+      StringBuilder summary = new StringBuilder()
+              .append(RequestMetrics.summary()).append(", ")
+              .append(NetworkEstimator.summary()).append(", ")
+              .append(FrameScheduler.getInstance().summary());
+      // Both are only created once the API key is known to be configured.
+      if (renderableBuildQueue != null) {
+        summary.append(" supersededBuilds=").append(renderableBuildQueue.getSuperseded());
+      }
+      if (sceneContext != null) {
+        summary.append(", ").append(sceneContext.getBillboardSummary());
+      }
+      Log.i(TAG, "Traces written to " + dir + ", " + summary);
+    } catch (IOException e) {
+      Log.e(TAG, "Could not write traces", e);
+    }
+  }
+
+  @Override
+  protected void onDestroy() {
+    unregisterComponentCallbacks(memoryGovernor);
+    if (localServer != null) {
+      localServer.stop();
+      localServer = null;
+    }
+    super.onDestroy();
+  }
+
+  /**
+   * Registers the caches with the memory governor, in the order they are trimmed.
+   */
+  private void registerMemoryGovernor() {
+    memoryGovernor.register(MemoryGovernor.Priority.THUMBNAILS, "thumbnails",
+            new MemoryGovernor.Trimmable() {
+              @Override
+              public int getEntryCount() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                return adapter != null ? adapter.getThumbnailCount() : 0;
+              }
+
+              @Override
+              public long getFootprintBytes() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                return adapter != null ? adapter.getThumbnailBytes() : 0;
+              }
+
+              @Override
+              public void trim() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                if (adapter != null) {
+                  adapter.releaseOffscreenThumbnails();
+                }
+              }
+            });
+    // Sceneform does not expose the size of a renderable, so only the counts are reported.
+    memoryGovernor.register(MemoryGovernor.Priority.RENDERABLES, "renderables",
+            new MemoryGovernor.Trimmable() {
+              @Override
+              public int getEntryCount() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                return sceneContext.getRenderableCount()
+                        + (adapter != null ? adapter.getRenderableCount() : 0);
+              }
+
+              @Override
+              public long getFootprintBytes() {
+                return 0;
+              }
+
+              @Override
+              public void trim() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                if (adapter != null) {
+                  adapter.releaseRenderables(sceneContext.getPlacedKeys());
+                }
+                sceneContext.releaseUnplacedRenderables();
+              }
+            });
+    memoryGovernor.register(MemoryGovernor.Priority.METADATA, "search results",
+            new MemoryGovernor.Trimmable() {
+              @Override
+              public int getEntryCount() {
+                return prefetchedSearch != null ? 1 : 0;
+              }
+
+              @Override
+              public long getFootprintBytes() {
+                CompletableFuture<byte[]> results = prefetchedSearch;
+                return results != null && results.isDone() && !results.isCompletedExceptionally()
+                        ? results.join().length : 0;
+              }
+
+              @Override
+              public void trim() {
+                prefetchedSearch = null;
+              }
+            });
+    // The items are recreated from the compact result columns when scrolled back into view.
+    memoryGovernor.register(MemoryGovernor.Priority.METADATA, "gallery items",
+            new MemoryGovernor.Trimmable() {
+              @Override
+              public int getEntryCount() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                return adapter != null ? adapter.getCreatedItemCount() : 0;
+              }
+
+              @Override
+              public long getFootprintBytes() {
+                return 0;
+              }
+
+              @Override
+              public void trim() {
+                GalleryAdapter adapter = (GalleryAdapter) gallery.getAdapter();
+                if (adapter != null) {
+                  adapter.releaseUnusedItems(sceneContext.getPlacedKeys());
+                }
+              }
+            });
+    memoryGovernor.register(MemoryGovernor.Priority.METADATA, "thumbnail previews",
+            new MemoryGovernor.Trimmable() {
+              @Override
+              public int getEntryCount() {
+                return ThumbnailPreviews.getLoadedCount();
+              }
+
+              @Override
+              public long getFootprintBytes() {
+                return ThumbnailPreviews.getLoadedBytes();
+              }
+
+              @Override
+              public void trim() {
+                ThumbnailPreviews.trim();
+              }
+            });
+    memoryGovernor.register(MemoryGovernor.Priority.METADATA, "asset details",
+            new MemoryGovernor.Trimmable() {
+              @Override
+              public int getEntryCount() {
+                return assetBatcher.getCachedCount();
+              }
+
+              @Override
+              public long getFootprintBytes() {
+                return 0;
+              }
+
+              @Override
+              public void trim() {
+                assetBatcher.clearCache();
+              }
+            });
+    registerComponentCallbacks(memoryGovernor);
+  }
+
+  /**
+   * Starts the local stand-in for the Poly API.  It is only available in debug builds.
+   *
+   * @return the base URL of the server, or the default base URL if it could not be started.
+   */
+  private String startLocalPolyServer() {
+    localServer = new LocalServerLauncher();
+    try {
+      return localServer.start(getExternalFilesDir("poly-fixtures"));
+    } catch (IOException e) {
+      Log.e(TAG, "Could not start the local Poly server", e);
+      localServer = null;
+      return getString(R.string.poly_base_url);
+    }
   }
 
   /**
@@ -146,8 +419,8 @@ public class PolyGalleryActivity extends AppCompatActivity {
         Scene scene = arFragment.getArSceneView().getScene();
         scene.addOnUpdateListener(PolyGalleryActivity.this::onSceneUpdate);
 
-        // Set the scene in the scene context helper object.
-        sceneContext.setScene(scene);
+        // Set the scene view in the scene context helper object.
+        sceneContext.setSceneView(arFragment.getArSceneView());
 
         // Remove the lifecycle observer since we're all set up.
         fragment.getLifecycle().removeObserver(this);
@@ -180,8 +453,8 @@ public class PolyGalleryActivity extends AppCompatActivity {
         Scene scene = sceneformFragment.getSceneView().getScene();
         scene.addOnUpdateListener(PolyGalleryActivity.this::onSceneUpdate);
 
-        // Set the scene in the scene context helper object.
-        sceneContext.setScene(scene);
+        // Set the scene view in the scene context helper object.
+        sceneContext.setSceneView(sceneformFragment.getSceneView());
 
         // Remove the lifecycle observer since we're all set up.
         fragment.getLifecycle().removeObserver(this);
@@ -241,53 +514,157 @@ public class PolyGalleryActivity extends AppCompatActivity {
             (ViewGroup) view.getParent(), false);
     final TextView keywordView = search_dialog.findViewById(R.id.keywords);
     keywordView.setText(R.string.default_search_keywords);
-    new AlertDialog.Builder(this).setTitle(R.string.search_poly)
+    AlertDialog.Builder builder = new AlertDialog.Builder(this).setTitle(R.string.search_poly)
             .setView(search_dialog)
             .setPositiveButton(R.string.search, (dialogInterface, i) -> {
                       String kw = keywordView.getText().toString();
                       doPolySearch(kw);
                     }
             )
-            .setCancelable(true)
-            .create().show();
+            .setCancelable(true);
+    List<String> recentIds = recentAssets.getIds();
+    if (!recentIds.isEmpty()) {
+      // Start fetching the recent assets while the dialog is open, they are cached for when
+      // the button is pressed.
+      for (String assetId : recentIds) {
+        assetBatcher.getAsset(assetId);
+      }
+      builder.setNeutralButton(R.string.recent,
+              (dialogInterface, i) -> showRecentAssets(recentIds));
+    }
+    builder.create().show();
+  }
+
+  /**
+   * Shows the recently placed assets in the gallery.  Their details are fetched by ID as one
+   * batch, the assets that can no longer be fetched are left out.
+   *
+   * @param assetIds - the IDs of the assets, most recent first.
+   */
+  private void showRecentAssets(List<String> assetIds) {
+    Tracer.Span searchSpan = Tracer.begin("search.recent", null);
+    assetBatcher.getAssets(assetIds).thenAcceptAsync(assets -> {
+      if (assets.isEmpty()) {
+        searchSpan.end();
+        handleRequestFailure(-1, "The recent models could not be fetched", null);
+        return;
+      }
+      try {
+        showResults(GalleryAdapter.parseAssets(assets.values(), mBackgroundThreadHandler),
+                searchSpan);
+      } catch (IOException e) {
+        searchSpan.end();
+        handleRequestFailure(-1, "Error parsing the recent models", e);
+      }
+    }, mBackgroundThreadHandler::post);
+  }
+
+  /**
+   * Starts a search, keeping the results until {@link #doPolySearch(String)} is called with the
+   * same keywords.
+   *
+   * @param keywords - the keywords to search for.
+   */
+  private void prefetchSearch(String keywords) {
+    CompletableFuture<byte[]> results = new CompletableFuture<>();
+    prefetchedKeywords = keywords;
+    prefetchedSearch = results;
+    Tracer.Span prefetchSpan = Tracer.begin("search.prefetch", null);
+    polyApi.ListAssets(keywords, false, "", prefetchSpan, mBackgroundThreadHandler,
+            new AsyncHttpRequest.CompletionListener() {
+              @Override
+              public void onHttpRequestSuccess(byte[] responseBody) {
+                prefetchSpan.end();
+                startupTimer.mark("prefetch");
+                results.complete(responseBody);
+              }
+
+              @Override
+              public void onHttpRequestFailure(int code, String message, Exception ex) {
+                prefetchSpan.end();
+                results.completeExceptionally(ex != null ? ex : new IOException(message));
+              }
+            });
   }
 
   /**
-   * Send the poly search and populate the gallery adapter.
+   * Send the poly search and populate the gallery adapter.  The results fetched during startup
+   * are used when the keywords match, and the search is sent again if that fetch failed.
    *
    * @param keywords - the keywords to search for.
    */
   private void doPolySearch(String keywords) {
-    polyApi.ListAssets(keywords, false, "", mBackgroundThreadHandler,
+    Tracer.Span searchSpan = Tracer.begin("search", null);
+    CompletableFuture<byte[]> prefetched = prefetchedSearch;
+    if (prefetched != null && keywords.equals(prefetchedKeywords)) {
+      prefetchedSearch = null;
+      prefetched.whenCompleteAsync((responseBody, throwable) -> {
+        if (throwable == null) {
+          showSearchResults(responseBody, searchSpan);
+        } else {
+          sendPolySearch(keywords, searchSpan);
+        }
+      }, mBackgroundThreadHandler::post);
+      return;
+    }
+    sendPolySearch(keywords, searchSpan);
+  }
+
+  private void sendPolySearch(String keywords, Tracer.Span searchSpan) {
+    polyApi.ListAssets(keywords, false, "", searchSpan, mBackgroundThreadHandler,
             new AsyncHttpRequest.CompletionListener() {
               @Override
               public void onHttpRequestSuccess(byte[] responseBody) {
-                try {
-                  final List<GalleryItem> items = GalleryAdapter.parseListResults(
-                          responseBody, mBackgroundThreadHandler);
-                  runOnUiThread(() -> {
-                    GalleryAdapter galleryAdapter = new GalleryAdapter(items);
-                    gallery.setAdapter(galleryAdapter);
-                  });
-                } catch (IOException e) {
-                  handleRequestFailure(-1, "Error parsing list", e);
-                }
+                showSearchResults(responseBody, searchSpan);
               }
 
               @Override
               public void onHttpRequestFailure(int code, String message, Exception ex) {
                 // Something went wrong with the request.
+                searchSpan.end();
                 handleRequestFailure(code, message, ex);
               }
             });
   }
 
+  /**
+   * Parses the search results on the background thread and shows them in the gallery.
+   */
+  private void showSearchResults(byte[] responseBody, Tracer.Span searchSpan) {
+    try {
+      Tracer.Span parseSpan = Tracer.begin("search.parse", searchSpan);
+      final GalleryResults results = GalleryAdapter.parseListResults(
+              responseBody, mBackgroundThreadHandler);
+      parseSpan.end();
+      showResults(results, searchSpan);
+    } catch (IOException e) {
+      searchSpan.end();
+      handleRequestFailure(-1, "Error parsing list", e);
+    }
+  }
+
+  /**
+   * Replaces the gallery with the results, within the frame budget.  The stored thumbnail
+   * previews of the results are read meanwhile.
+   */
+  private void showResults(GalleryResults results, Tracer.Span searchSpan) {
+    ThumbnailPreviews.preload(results.getKeys());
+    FrameScheduler.getInstance().post(FrameScheduler.Priority.GALLERY, () -> {
+      GalleryAdapter galleryAdapter = new GalleryAdapter(results);
+      gallery.setAdapter(galleryAdapter);
+      searchSpan.end();
+    });
+  }
+
   /**
    * Called on every frame.  This updates the information and moves nodes as needed.
    *
-   * @param frameTime - unused.
+   * @param frameTime - used to collect frame statistics.
    */
   private void onSceneUpdate(FrameTime frameTime) {
+    startupTimer.finish("first frame");
+    frameStats.onFrame(frameTime, sceneContext.getPlacements().size(),
+            sceneContext.getSharedRenderableCount());
 
     // Show the "what to do" text until there is a model selected and placed.
     if (gallery.getAdapter() == null || gallery.getAdapter().getItemCount() == 0) {
@@ -299,8 +676,12 @@ public class PolyGalleryActivity extends AppCompatActivity {
       return;
     }
 
-    // Sets the overlay text.
-    setInfoText(sceneContext.generateNodeInfo());
+    // Sets the overlay text, or the load progress while the model is loading.
+    String info = sceneContext.generateNodeInfo();
+    setInfoText(info != null ? info : getLoadProgressText(sceneContext.getCurrentItem()));
+
+    // Shows distant models as billboards and hides the ones that cannot be seen.
+    sceneContext.updateLevelOfDetail();
 
     // Rotates the info card node to face the camera.
     sceneContext.rotateInfoCardToCamera();
@@ -323,18 +704,23 @@ public class PolyGalleryActivity extends AppCompatActivity {
     // Update the status.
     setInfoText("loading model " + selectedItem.getDisplayName());
 
-    sceneContext.resetModelNode(pos);
+    Tracer.Span placeSpan = Tracer.begin("place", null);
+    Placement placement = sceneContext.addModelNode(selectedItem, pos);
 
-    sceneContext.attachInfoCardNode(selectedItem);
+    sceneContext.attachInfoCardNode(placement);
 
     // Set the renderable from the gallery.
-    selectedItem.getRenderableHolder()
-            .thenAccept(renderable -> {
-              sceneContext.setModelRenderable(renderable);
-              sceneContext.limitSize(1f, 1f);
-            })
+    getRenderable(selectedItem, placeSpan)
+            .thenAcceptAsync(renderable -> {
+              if (sceneContext.setModelRenderable(placement, renderable, placeSpan)) {
+                sceneContext.limitSize(placement, 1f, 1f);
+                recentAssets.add(selectedItem.getKey());
+              }
+              placeSpan.end();
+            }, attachExecutor)
             .exceptionally(throwable -> {
-              handleRequestFailure(-1, throwable.getMessage(), (Exception) throwable);
+              placeSpan.end();
+              onLoadFailure(placement, throwable);
               return null;
             });
   }
@@ -345,38 +731,115 @@ public class PolyGalleryActivity extends AppCompatActivity {
     if (selectedItem == null) {
       return;
     }
+    Tracer.Span placeSpan = Tracer.begin("place", null);
     // Create the Anchor.
     Anchor anchor = hitResult.createAnchor();
 
-    sceneContext.resetAnchorNode(anchor);
-
     // Update the status.
     setInfoText("loading model " + selectedItem.getDisplayName());
 
     TransformableNode transformableNode = new TransformableNode(
             ((ArFragment) fragment).getTransformationSystem());
 
-    sceneContext.attachModelNodeToAnchorNode(transformableNode);
+    Placement placement = sceneContext.addAnchoredModelNode(selectedItem, anchor,
+            transformableNode);
 
     transformableNode.select();
 
-    sceneContext.attachInfoCardNode(selectedItem);
+    sceneContext.attachInfoCardNode(placement);
 
     // Set the renderable from the gallery.
-    selectedItem.getRenderableHolder().thenAccept(renderable -> {
-      sceneContext.setModelRenderable(renderable);
-      SceneContext.setScaleRange(transformableNode, .01f, 3f);
-    }).exceptionally(throwable -> {
-      handleRequestFailure(-1, throwable.getMessage(), (Exception) throwable);
+    getRenderable(selectedItem, placeSpan).thenAcceptAsync(renderable -> {
+      if (sceneContext.setModelRenderable(placement, renderable, placeSpan)) {
+        SceneContext.setScaleRange(transformableNode);
+        recentAssets.add(selectedItem.getKey());
+      }
+      placeSpan.end();
+    }, attachExecutor).exceptionally(throwable -> {
+      placeSpan.end();
+      onLoadFailure(placement, throwable);
       return null;
     });
   }
 
   /**
-   * Set the text of the info overlay.
+   * Returns the renderable for the item.  If the asset is already placed in the scene, its
+   * renderable is reused instead of loading it again.  Otherwise the model is queued for loading
+   * once it is admitted, and the future is cancelled if a newer request supersedes it.
+   */
+  private CompletableFuture<ModelRenderable> getRenderable(GalleryItem item,
+                                                           Tracer.Span parent) {
+    ModelRenderable shared = sceneContext.getSharedRenderable(item);
+    return shared != null ? CompletableFuture.completedFuture(shared)
+            : admitModel(item).thenCompose(ignored -> renderableBuildQueue.submit(item, parent));
+  }
+
+  /**
+   * Returns a future that completes when the model may be loaded.  A model estimated to be
+   * larger than the size budget is only loaded after the user confirms, the future is cancelled
+   * if they decline.  Models of unknown size are admitted.
+   */
+  private CompletableFuture<Void> admitModel(GalleryItem item) {
+    long size = item.getEstimatedSize();
+    if (item.hasRenderable() || item.isLoading() || size <= modelSizeBudget) {
+      return CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<Void> admitted = new CompletableFuture<>();
+    String msg = item.getDisplayName() + " is a " + formatMegabytes(size)
+            + " download. Load it anyway?";
+    new AlertDialog.Builder(this).setTitle("Large model")
+            .setMessage(msg)
+            .setPositiveButton(android.R.string.ok, (dialog, which) -> admitted.complete(null))
+            .setNegativeButton(android.R.string.cancel, (dialog, which) -> admitted.cancel(false))
+            .setOnCancelListener(dialog -> admitted.cancel(false))
+            .create().show();
+    return admitted;
+  }
+
+  /**
+   * Handles a model that could not be loaded.  The empty placement and its info card are
+   * removed.  If the user declined loading the model, or the load was superseded, nothing else
+   * is done, otherwise the error is shown.
+   */
+  private void onLoadFailure(Placement placement, Throwable throwable) {
+    runOnUiThread(() -> sceneContext.removePlacement(placement));
+    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause() : throwable;
+    if (cause instanceof CancellationException) {
+      return;
+    }
+    handleRequestFailure(-1, cause.getMessage(),
+            cause instanceof Exception ? (Exception) cause : new Exception(cause));
+  }
+
+  /**
+   * Returns the load progress text of the item, or null if it is not loading.
+   */
+  private String getLoadProgressText(GalleryItem item) {
+    if (item == null || !item.isLoading()) {
+      return null;
+    }
+    long received = item.getBytesReceived();
+    if (item != progressItem || received != progressBytes) {
+      progressItem = item;
+      progressBytes = received;
+      long expected = item.getBytesExpected();
+      progressText = "Loading " + item.getDisplayName() + ": " + formatMegabytes(received)
+              + (expected > 0 ? " of " + formatMegabytes(expected) : "");
+    }
+    return progressText;
+  }
+
+  private static String formatMegabytes(long bytes) {
+    return String.format(Locale.US, "%.1f MB", bytes / (1024f * 1024f));
+  }
+
+  /**
+   * Set the text of the info overlay.  This is called every frame, so the view is only updated
+   * when the text changes.
    */
   private void setInfoText(String msg) {
-    if (model_info != null) {
+    if (model_info != null && !TextUtils.equals(model_info.getText(), msg)) {
       model_info.setText(msg);
     }
   }
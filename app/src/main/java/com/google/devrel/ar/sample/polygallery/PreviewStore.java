@@ -0,0 +1,285 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Small least recently used store of byte arrays, one file per key in a directory.
+ * <p>
+ * The index of the keys is kept in memory in access order, so storing an entry only writes its
+ * own file and the least recently used file is deleted when the store is full.  Only the names
+ * of the files are read at startup, the values are read in the background when requested, and
+ * returned by a later {@link #get(String)}.  They can be dropped from memory with
+ * {@link #trim()}.  All disk access happens on the given executor, so it should run tasks in
+ * order.
+ */
+class PreviewStore {
+  private static final String ENCODING = "UTF-8";
+
+  // Prefix of the files being written.  URL encoded keys never start with it.
+  private static final String TEMP_PREFIX = "~";
+
+  private final File dir;
+  private final int maxEntries;
+  private final Executor io;
+
+  // The keys in access order.  The value is null when it is only on disk.  Guarded by this.
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+  private int loadedCount;
+
+  /**
+   * Creates an empty store.  Call {@link #load()} to index the stored entries.
+   *
+   * @param dir        the directory of the store, created if needed.
+   * @param maxEntries the most entries kept, on disk and in memory.
+   * @param io         runs the disk writes, deletes and reads in order.
+   */
+  PreviewStore(File dir, int maxEntries, Executor io) {
+    this.dir = dir;
+    this.maxEntries = maxEntries;
+    this.io = io;
+  }
+
+  /**
+   * Indexes the entries stored in the directory by the modification times of their files, least
+   * recently used first.  The values are not read.  Entries stored since the store was created
+   * are kept as the most recent ones.  This lists the directory, so it should be run on the
+   * executor of the store.
+   */
+  void load() {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    List<File> evicted = new ArrayList<>();
+    LinkedHashMap<String, byte[]> index = new LinkedHashMap<>(files.length * 2, 0.75f, true);
+    for (File file : files) {
+      String key = file.getName().startsWith(TEMP_PREFIX) ? null : decode(file.getName());
+      if (key == null) {
+        // A partial write, or a file that is not an entry.
+        evicted.add(file);
+      } else {
+        index.put(key, null);
+      }
+    }
+    synchronized (this) {
+      index.putAll(entries);
+      entries.clear();
+      entries.putAll(index);
+      evictOverflow(evicted);
+    }
+    deleteAll(evicted);
+  }
+
+  /**
+   * Reads the values of the given keys that are only on disk in the background, so they are in
+   * memory when requested.
+   */
+  void preload(Iterable<String> keys) {
+    io.execute(() -> {
+      for (String key : keys) {
+        readValue(key);
+      }
+    });
+  }
+
+  /**
+   * Returns the value of the key if it is in memory.  If the key is only on disk, it is read in
+   * the background and null is returned.
+   */
+  byte[] get(String key) {
+    boolean known;
+    byte[] value;
+    synchronized (this) {
+      known = entries.containsKey(key);
+      value = entries.get(key);
+    }
+    if (!known) {
+      return null;
+    }
+    File file = fileFor(key);
+    if (value != null) {
+      // Keeps the order of the entries across launches.
+      io.execute(() -> file.setLastModified(System.currentTimeMillis()));
+      return value;
+    }
+    io.execute(() -> readValue(key));
+    return null;
+  }
+
+  // Reads the value of a key stored only on disk into memory.  Runs on the executor.
+  private void readValue(String key) {
+    synchronized (this) {
+      if (!entries.containsKey(key) || entries.get(key) != null) {
+        return;
+      }
+    }
+    File file = fileFor(key);
+    byte[] read = read(file);
+    synchronized (this) {
+      if (!entries.containsKey(key) || entries.get(key) != null) {
+        return;
+      }
+      if (read != null) {
+        entries.put(key, read);
+        loadedCount++;
+        return;
+      }
+      // The file is empty or cannot be read, the entry is dropped.
+      entries.remove(key);
+    }
+    file.delete();
+  }
+
+  /**
+   * Returns true if the key is stored, in memory or on disk.
+   */
+  synchronized boolean contains(String key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Stores the value of the key, evicting the least recently used entry if the store is full.
+   */
+  void put(String key, byte[] value) {
+    List<File> evicted = new ArrayList<>();
+    synchronized (this) {
+      if (entries.put(key, value) == null) {
+        loadedCount++;
+      }
+      evictOverflow(evicted);
+    }
+    File file = fileFor(key);
+    io.execute(() -> {
+      dir.mkdirs();
+      write(file, value);
+    });
+    if (!evicted.isEmpty()) {
+      io.execute(() -> deleteAll(evicted));
+    }
+  }
+
+  /**
+   * Drops the values from memory.  The entries stay on disk and are read again when requested.
+   */
+  synchronized void trim() {
+    for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+      entry.setValue(null);
+    }
+    loadedCount = 0;
+  }
+
+  /**
+   * Returns the number of entries stored.
+   */
+  synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the number of values held in memory.
+   */
+  synchronized int getLoadedCount() {
+    return loadedCount;
+  }
+
+  // Removes the least recently used entries over the limit, adding their files to the list.
+  private void evictOverflow(List<File> evicted) {
+    Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+    while (entries.size() > maxEntries && iterator.hasNext()) {
+      Map.Entry<String, byte[]> eldest = iterator.next();
+      if (eldest.getValue() != null) {
+        loadedCount--;
+      }
+      evicted.add(fileFor(eldest.getKey()));
+      iterator.remove();
+    }
+  }
+
+  private File fileFor(String key) {
+    try {
+      return new File(dir, URLEncoder.encode(key, ENCODING));
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static String decode(String fileName) {
+    try {
+      return URLDecoder.decode(fileName, ENCODING);
+    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static byte[] read(File file) {
+    long length = file.length();
+    if (length <= 0 || length > Integer.MAX_VALUE) {
+      return null;
+    }
+    byte[] data = new byte[(int) length];
+    try (InputStream input = new FileInputStream(file)) {
+      int offset = 0;
+      while (offset < data.length) {
+        int n = input.read(data, offset, data.length - offset);
+        if (n < 0) {
+          return null;
+        }
+        offset += n;
+      }
+      return data;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static void write(File file, byte[] data) {
+    // Written to a temporary file first, so a crash does not leave a partial entry.
+    File temp = new File(file.getParentFile(), TEMP_PREFIX + file.getName());
+    try (OutputStream output = new FileOutputStream(temp)) {
+      output.write(data);
+    } catch (IOException e) {
+      temp.delete();
+      return;
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+    }
+  }
+
+  private static void deleteAll(List<File> files) {
+    for (File file : files) {
+      file.delete();
+    }
+  }
+}
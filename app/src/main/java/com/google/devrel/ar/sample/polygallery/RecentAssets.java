@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The IDs of the assets most recently placed in the scene, most recent first.  They are kept
+ * across launches, so the models can be found again without searching for them.
+ */
+public class RecentAssets {
+  private static final String PREFERENCES_NAME = "recent_assets";
+  private static final String KEY_IDS = "ids";
+
+  // The most asset IDs kept.
+  private static final int MAX_ASSETS = 20;
+
+  // The prefix of the asset names in the API responses, the ID follows it.
+  private static final String NAME_PREFIX = "assets/";
+
+  private final SharedPreferences preferences;
+
+  // Guarded by this.  Read from the preferences on first use, so creating the list at startup
+  // does not wait for the disk.
+  private List<String> ids;
+
+  public RecentAssets(Context context) {
+    preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME,
+            Context.MODE_PRIVATE);
+  }
+
+  /**
+   * Moves the asset to the front of the list, dropping the oldest asset when the list is full.
+   *
+   * @param name the name of the asset, as used for the gallery item keys, or its ID.
+   */
+  public synchronized void add(String name) {
+    String id = name.startsWith(NAME_PREFIX) ? name.substring(NAME_PREFIX.length()) : name;
+    List<String> recent = load();
+    recent.remove(id);
+    recent.add(0, id);
+    while (recent.size() > MAX_ASSETS) {
+      recent.remove(recent.size() - 1);
+    }
+    preferences.edit().putString(KEY_IDS, TextUtils.join(",", recent)).apply();
+  }
+
+  /**
+   * Returns the asset IDs, most recent first.
+   */
+  public synchronized List<String> getIds() {
+    return new ArrayList<>(load());
+  }
+
+  // Guarded by this.
+  private List<String> load() {
+    if (ids == null) {
+      ids = new ArrayList<>();
+      String stored = preferences.getString(KEY_IDS, "");
+      if (!stored.isEmpty()) {
+        ids.addAll(Arrays.asList(stored.split(",")));
+      }
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import com.google.ar.sceneform.collision.Box;
+import com.google.ar.sceneform.collision.CollisionShape;
+import com.google.ar.sceneform.collision.Sphere;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.Renderable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounds and scale metadata of a renderable, in local units.
+ * <p>
+ * The values are computed once per model renderable from its collision shape and cached.  The
+ * shape of a view renderable follows the size of its view, so its bounds are not cached.  Box and
+ * sphere shapes are supported, any other shape, or no shape at all, gets default bounds so the
+ * callers never have to check.  Must be used on the main thread.
+ */
+public class RenderableBounds {
+  // Size, in meters, of the bounds used when the shape is not known.
+  private static final float DEFAULT_SIZE = 0.5f;
+
+  // The size range, in meters, used for the recommended scales.
+  private static final float MIN_SIZE = 0.01f;
+  private static final float MAX_SIZE = 3f;
+
+  private static final Map<Renderable, RenderableBounds> cache = new WeakHashMap<>();
+
+  private static final RenderableBounds DEFAULT = compute(null);
+
+  private final Vector3 center;
+  private final Vector3 size;
+  private final float height;
+  private final float maxDimension;
+  private final float radius;
+  private final float recommendedMinScale;
+  private final float recommendedMaxScale;
+
+  private RenderableBounds(Vector3 center, Vector3 size) {
+    this.center = center;
+    this.size = size;
+    this.height = center.y + size.y / 2;
+    this.maxDimension = Math.max(size.x, Math.max(size.y, size.z));
+    this.radius = size.length() / 2;
+    this.recommendedMinScale = getScaleForSize(MIN_SIZE);
+    this.recommendedMaxScale = getScaleForSize(MAX_SIZE);
+  }
+
+  /**
+   * Returns the bounds of the renderable, computing them on first use.
+   *
+   * @param renderable the renderable, may be null.
+   * @return the bounds, the default bounds if the renderable is null.
+   */
+  public static RenderableBounds of(Renderable renderable) {
+    if (renderable == null) {
+      return DEFAULT;
+    }
+    if (!(renderable instanceof ModelRenderable)) {
+      return compute(renderable.getCollisionShape());
+    }
+    RenderableBounds bounds = cache.get(renderable);
+    if (bounds == null) {
+      bounds = compute(renderable.getCollisionShape());
+      cache.put(renderable, bounds);
+    }
+    return bounds;
+  }
+
+  private static RenderableBounds compute(CollisionShape shape) {
+    if (shape instanceof Box) {
+      Box box = (Box) shape;
+      return new RenderableBounds(box.getCenter(), box.getSize());
+    }
+    if (shape instanceof Sphere) {
+      Sphere sphere = (Sphere) shape;
+      float diameter = sphere.getRadius() * 2;
+      return new RenderableBounds(sphere.getCenter(), new Vector3(diameter, diameter, diameter));
+    }
+    return new RenderableBounds(new Vector3(0, DEFAULT_SIZE / 2, 0),
+            new Vector3(DEFAULT_SIZE, DEFAULT_SIZE, DEFAULT_SIZE));
+  }
+
+  /**
+   * The center of the bounds.  The returned vector must not be modified.
+   */
+  public Vector3 getCenter() {
+    return center;
+  }
+
+  /**
+   * The size of the bounds.  The returned vector must not be modified.
+   */
+  public Vector3 getSize() {
+    return size;
+  }
+
+  /**
+   * The height of the top of the bounds above the origin.
+   */
+  public float getHeight() {
+    return height;
+  }
+
+  /**
+   * The largest of the dimensions.
+   */
+  public float getMaxDimension() {
+    return maxDimension;
+  }
+
+  /**
+   * The radius of the sphere enclosing the bounds.
+   */
+  public float getRadius() {
+    return radius;
+  }
+
+  /**
+   * Returns the scale at which the largest dimension has the given size.
+   */
+  public float getScaleForSize(float size) {
+    return maxDimension > 0 ? size / maxDimension : 1f;
+  }
+
+  /**
+   * The scale at which the largest dimension is 1cm.
+   */
+  public float getRecommendedMinScale() {
+    return recommendedMinScale;
+  }
+
+  /**
+   * The scale at which the largest dimension is 3m.
+   */
+  public float getRecommendedMaxScale() {
+    return recommendedMaxScale;
+  }
+}
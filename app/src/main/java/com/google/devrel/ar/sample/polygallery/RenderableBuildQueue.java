@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.util.Log;
+
+import com.google.ar.sceneform.rendering.ModelRenderable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Queue of model renderable builds with a limit on the number running at once.
+ * <p>
+ * Quick taps can request several models in a row, which then compete for the network and the
+ * Sceneform loader although only the latest matters.  Builds over the limit wait in the queue,
+ * and a newer request supersedes the builds of other models: their futures are cancelled, and
+ * queued ones are never started.  A build that already started cannot be stopped, it finishes
+ * in the background and keeps its renderable in the item.  It no longer holds its slot though,
+ * one build over the limit may run, so the latest request does not wait behind a build it
+ * superseded.  All methods must be called on the main thread.
+ */
+public class RenderableBuildQueue {
+  private static final String TAG = "RenderableBuildQueue";
+
+  private static class Build {
+    final GalleryItem item;
+    final Tracer.Span parent;
+    final CompletableFuture<ModelRenderable> future = new CompletableFuture<>();
+    boolean superseded;
+
+    Build(GalleryItem item, Tracer.Span parent) {
+      this.item = item;
+      this.parent = parent;
+    }
+  }
+
+  private final int maxRunning;
+  private final ArrayDeque<Build> queue = new ArrayDeque<>();
+  private final List<Build> running = new ArrayList<>();
+  private long superseded;
+
+  /**
+   * Creates a queue.
+   *
+   * @param maxRunning the most builds running at once.
+   */
+  public RenderableBuildQueue(int maxRunning) {
+    this.maxRunning = Math.max(1, maxRunning);
+  }
+
+  /**
+   * Requests the renderable of the item.  If the item is already loaded or loading, its future
+   * is returned.  Otherwise the build is queued, superseding the builds of other items.
+   *
+   * @param item   the item to build the renderable of.
+   * @param parent the trace span the build is part of, may be null.
+   * @return the future of the renderable, cancelled if the build is superseded.
+   */
+  public CompletableFuture<ModelRenderable> submit(GalleryItem item, Tracer.Span parent) {
+    if (item.hasRenderable() || item.isLoading()) {
+      return item.getRenderableHolder(parent);
+    }
+    Build existing = null;
+    for (Iterator<Build> iterator = queue.iterator(); iterator.hasNext(); ) {
+      Build build = iterator.next();
+      if (build.item == item) {
+        existing = build;
+      } else {
+        iterator.remove();
+        build.future.cancel(false);
+        superseded++;
+        Log.d(TAG, "Superseded the build of " + build.item.getDisplayName());
+      }
+    }
+    for (Build build : running) {
+      if (build.item != item && !build.superseded) {
+        build.superseded = true;
+        build.future.cancel(false);
+        superseded++;
+        Log.d(TAG, "Superseded the running build of " + build.item.getDisplayName());
+      }
+    }
+    if (existing != null) {
+      drain();
+      return existing.future;
+    }
+    Build build = new Build(item, parent);
+    queue.add(build);
+    drain();
+    return build.future;
+  }
+
+  // Starts queued builds while under the limit.  Superseded builds do not count towards it, as
+  // long as no more than one build over the limit runs.
+  private void drain() {
+    while (!queue.isEmpty() && getActiveCount() < maxRunning && running.size() <= maxRunning) {
+      Build build = queue.poll();
+      running.add(build);
+      build.item.getRenderableHolder(build.parent).whenComplete((renderable, throwable) -> {
+        running.remove(build);
+        if (throwable != null) {
+          build.future.completeExceptionally(throwable);
+        } else {
+          build.future.complete(renderable);
+        }
+        drain();
+      });
+    }
+  }
+
+  // Returns the number of running builds that are not superseded.
+  private int getActiveCount() {
+    int active = 0;
+    for (Build build : running) {
+      if (!build.superseded) {
+        active++;
+      }
+    }
+    return active;
+  }
+
+  /**
+   * The number of builds dropped because a newer one replaced them.
+   */
+  public long getSuperseded() {
+    return superseded;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Limits the number of asynchronous requests running at once.  Requests over the limit are
+ * queued and started in order as running ones complete.
+ */
+public class RequestLimiter {
+  private final IntSupplier maxRunning;
+
+  // Guarded by this.
+  private final ArrayDeque<Consumer<Runnable>> queue = new ArrayDeque<>();
+  private int running;
+
+  /**
+   * Creates a limiter.
+   *
+   * @param maxRunning supplies the most requests run at once.  It is read each time a request
+   *                   could start, so the limit can change over time.
+   */
+  public RequestLimiter(IntSupplier maxRunning) {
+    this.maxRunning = maxRunning;
+  }
+
+  /**
+   * Submits a request.  The request is started when under the limit, and must run the given
+   * callback when it completes, successfully or not.  Only the first run counts, so a request
+   * reporting its completion twice does not free a second slot.
+   */
+  public void submit(Consumer<Runnable> request) {
+    synchronized (this) {
+      queue.add(request);
+    }
+    drain();
+  }
+
+  // Starts queued requests while under the limit.  They are started outside of the lock.
+  private void drain() {
+    while (true) {
+      Consumer<Runnable> request;
+      synchronized (this) {
+        if (queue.isEmpty() || running >= maxRunning.getAsInt()) {
+          return;
+        }
+        running++;
+        request = queue.poll();
+      }
+      AtomicBoolean completed = new AtomicBoolean();
+      request.accept(() -> {
+        if (completed.compareAndSet(false, true)) {
+          onComplete();
+        }
+      });
+    }
+  }
+
+  private void onComplete() {
+    synchronized (this) {
+      running--;
+    }
+    drain();
+  }
+}
@@ -0,0 +1,143 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devrel.ar.sample.polygallery;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide counters for the HTTP requests sent by {@link AsyncHttpRequest}.
+ */
+public final class RequestMetrics {
+  private static final AtomicLong requests = new AtomicLong();
+  private static final AtomicLong successes = new AtomicLong();
+  private static final AtomicLong failures = new AtomicLong();
+  private static final AtomicLong retries = new AtomicLong();
+  private static final AtomicLong circuitRejections = new AtomicLong();
+  private static final AtomicLong timeouts = new AtomicLong();
+  private static final AtomicLong deadlinesExceeded = new AtomicLong();
+  private static final AtomicLong wireBytes = new AtomicLong();
+  private static final AtomicLong decodedBytes = new AtomicLong();
+
+  private RequestMetrics() {
+  }
+
+  static void recordRequest() {
+    requests.incrementAndGet();
+  }
+
+  static void recordSuccess() {
+    successes.incrementAndGet();
+  }
+
+  static void recordFailure() {
+    failures.incrementAndGet();
+  }
+
+  static void recordRetry() {
+    retries.incrementAndGet();
+  }
+
+  static void recordCircuitRejection() {
+    circuitRejections.incrementAndGet();
+  }
+
+  static void recordTimeout() {
+    timeouts.incrementAndGet();
+  }
+
+  static void recordDeadlineExceeded() {
+    deadlinesExceeded.incrementAndGet();
+  }
+
+  static void recordTransfer(long wire, long decoded) {
+    wireBytes.addAndGet(wire);
+    decodedBytes.addAndGet(decoded);
+  }
+
+  public static long getRequests() {
+    return requests.get();
+  }
+
+  public static long getSuccesses() {
+    return successes.get();
+  }
+
+  public static long getFailures() {
+    return failures.get();
+  }
+
+  public static long getRetries() {
+    return retries.get();
+  }
+
+  public static long getCircuitRejections() {
+    return circuitRejections.get();
+  }
+
+  /**
+   * The number of attempts that hit a connect or read timeout.
+   */
+  public static long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /**
+   * The number of requests, including model loads, that failed because their deadline passed.
+   */
+  public static long getDeadlinesExceeded() {
+    return deadlinesExceeded.get();
+  }
+
+  /**
+   * The number of response body bytes received over the network, before decompression.
+   */
+  public static long getWireBytes() {
+    return wireBytes.get();
+  }
+
+  /**
+   * The number of response body bytes delivered to the listeners, after decompression.
+   */
+  public static long getDecodedBytes() {
+    return decodedBytes.get();
+  }
+
+  /**
+   * Resets all the counters.
+   */
+  public static void reset() {
+    requests.set(0);
+    successes.set(0);
+    failures.set(0);
+    retries.set(0);
+    circuitRejections.set(0);
+    timeouts.set(0);
+    deadlinesExceeded.set(0);
+    wireBytes.set(0);
+    decodedBytes.set(0);
+  }
+
+  /**
+   * Returns a one line summary of the counters, suitable for logging.
+   */
+  public static String summary() {
+    return String.format(Locale.US,
+            "requests=%d successes=%d failures=%d retries=%d circuitRejections=%d"
+                    + " timeouts=%d deadlinesExceeded=%d wireBytes=%d decodedBytes=%d",
+            getRequests(), getSuccesses(), getFailures(), getRetries(), getCircuitRejections(),
+            getTimeouts(), getDeadlinesExceeded(), getWireBytes(), getDecodedBytes());
+  }
+}
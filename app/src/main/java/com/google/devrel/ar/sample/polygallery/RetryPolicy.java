@@ -0,0 +1,99 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devrel.ar.sample.polygallery;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Retry policy for idempotent HTTP requests.
+ * <p>
+ * Failed attempts are retried with exponential backoff and full jitter.  A Retry-After value sent
+ * by the server takes precedence over the computed delay.
+ */
+public class RetryPolicy {
+  /**
+   * The policy used by default: 3 attempts, starting at 250ms and backing off up to 4 seconds.
+   */
+  public static final RetryPolicy DEFAULT = new RetryPolicy(3, 250, 4000, 30000, new Random());
+
+  /**
+   * A policy that never retries.
+   */
+  public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, new Random());
+
+  private final int maxAttempts;
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+  private final long maxRetryAfterMillis;
+  private final Random random;
+
+  /**
+   * Creates a retry policy.
+   *
+   * @param maxAttempts         the total number of attempts, including the first one.
+   * @param baseDelayMillis     the delay before the first retry, doubled for each further retry.
+   * @param maxDelayMillis      the upper bound of the computed delay.
+   * @param maxRetryAfterMillis the longest Retry-After the policy waits for.  Longer values fail
+   *                            the request instead.
+   * @param random              the source of jitter.
+   */
+  public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                     long maxRetryAfterMillis, Random random) {
+    this.maxAttempts = maxAttempts;
+    this.baseDelayMillis = baseDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.maxRetryAfterMillis = maxRetryAfterMillis;
+    this.random = random;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Returns true if a failed attempt is worth retrying.  Connection level errors, timeouts,
+   * throttling and server errors are transient.  Other statuses are final.
+   *
+   * @param statusCode the status code, or 0 if no response was received.
+   * @param exception  the exception thrown by the attempt, if any.
+   */
+  public boolean isRetryable(int statusCode, Exception exception) {
+    if (statusCode == 0) {
+      return exception instanceof IOException;
+    }
+    return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+  }
+
+  /**
+   * Returns the delay before the next attempt.
+   *
+   * @param attempt          the number of the attempt that failed, starting at 1.
+   * @param retryAfterMillis the delay requested by the server, or -1 if none.
+   * @return the delay in milliseconds, or -1 if the request should not be retried.
+   */
+  public long getDelayMillis(int attempt, long retryAfterMillis) {
+    if (retryAfterMillis >= 0) {
+      return retryAfterMillis <= maxRetryAfterMillis ? retryAfterMillis : -1;
+    }
+    long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+    if (ceiling <= 0) {
+      return 0;
+    }
+    synchronized (random) {
+      return (long) (random.nextDouble() * ceiling);
+    }
+  }
+}
@@ -16,58 +16,82 @@
 package com.google.devrel.ar.sample.polygallery;
 
 import android.content.Context;
-import android.support.annotation.NonNull;
-import android.widget.TextView;
 
 import com.google.ar.core.Anchor;
 import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.Camera;
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.Scene;
-import com.google.ar.sceneform.collision.Box;
+import com.google.ar.sceneform.SceneView;
 import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.ModelRenderable;
-import com.google.ar.sceneform.rendering.ViewRenderable;
 import com.google.ar.sceneform.ux.TransformableNode;
 
-import java.util.Locale;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The context of a Scene.  This class handles
  * the nodes of the Sceneform scene and provides some helper functions.
+ * <p>
+ * Any number of models can be placed in the scene.  Placements of the same asset share a single
+ * ModelRenderable, and their level of detail is adjusted each frame by a {@link LodController}.
  */
 public class SceneContext {
-  private final Context context;
-  private AnchorNode anchorNode;
-  private Node modelNode;
-  private Node infoCard;
+  // The number of info cards built ahead of time.
+  private static final int INFO_CARD_POOL_SIZE = 4;
+
+  private final List<Placement> placements = new ArrayList<>();
+
+  // The renderable used by all the placements of an asset, by asset key.
+  private final Map<String, ModelRenderable> sharedRenderables = new HashMap<>();
+
+  // The most recent placement, described by the node info.
+  private Placement current;
   private Scene scene;
+  private SceneView sceneView;
+  private final LodController lodController;
+  private final InfoCardPool infoCardPool;
+  private final Billboarder billboarder = new Billboarder();
+  private final NodeInfoFormatter nodeInfoFormatter = new NodeInfoFormatter();
 
   /**
    * Create a new context for the scene
    * @param context - the activity context.  This is used for loading assets.
    */
   public SceneContext(Context context) {
-    this.context = context;
+    this.lodController = new LodController(context);
+    this.infoCardPool = new InfoCardPool(context);
   }
 
   /**
-   * Limits the modelNode size by scaling.
+   * Builds the info cards ahead of time, so placing the first models does not wait for them.
+   * Must be called on the main thread.
+   */
+  public void warmInfoCards() {
+    infoCardPool.warm(INFO_CARD_POOL_SIZE);
+  }
+
+  /**
+   * Limits the size of a placed model by scaling.
+   * @param placement the placement to scale.
    * @param minSize  the min size in meters for the model.
    * @param maxSize the max size in meters for the model.
    */
-  public  void limitSize(float minSize, float maxSize) {
-    Box modelBox = (Box) modelNode.getCollisionShape();
-    Vector3 size = modelBox.getSize();
-    float maxDim = Math.max(size.x, Math.max(size.y, size.z));
+  public void limitSize(Placement placement, float minSize, float maxSize) {
+    Node modelNode = placement.getModelNode();
+    InfoCard infoCard = placement.getInfoCard();
+    float maxDim = RenderableBounds.of(modelNode.getRenderable()).getMaxDimension();
     float currentScale = modelNode.getWorldScale().x;
 
-    if (infoCard != null) {
-      Box infoBox = (Box)infoCard.getCollisionShape();
-      size = infoBox.getSize();
-      float infoMaxDim = Math.max(size.x, Math.max(size.y, size.z));
+    if (infoCard != null && infoCard.getRenderable() != null) {
+      float infoMaxDim = RenderableBounds.of(infoCard.getRenderable()).getMaxDimension();
       if (infoMaxDim > maxDim) {
         maxDim = infoMaxDim;
         currentScale = infoCard.getWorldScale().x;
@@ -87,12 +111,13 @@ public class SceneContext {
   }
 
   /**
-   * Sets the scene object for this context.  This simplifies the differences between an AR based
+   * Sets the scene view for this context.  This simplifies the differences between an AR based
    * scene and non-AR based scene.
-   * @param scene
+   * @param sceneView the view showing the scene.
    */
-  public void setScene(Scene scene) {
-    this.scene = scene;
+  public void setSceneView(SceneView sceneView) {
+    this.sceneView = sceneView;
+    this.scene = sceneView.getScene();
   }
 
   /**
@@ -111,204 +136,265 @@ public class SceneContext {
    * @param maxSize the max size in meters to allow when scaling the node.
    */
   public static void setScaleRange(TransformableNode node, float minSize, float maxSize) {
-    // Set the min/max scale based on size not factors
-    Box box = (Box) node.getRenderable().getCollisionShape();
-    Vector3 size = Objects.requireNonNull(box).getSize();
-    // use the largest dimension
-    float maxDim = Math.max(size.x, Math.max(size.y, size.z));
-
-    float minScale = node.getScaleController().getMinScale();
-    float maxScale = node.getScaleController().getMaxScale();
-    // min is 1cm
-    minScale = Math.min(minSize / maxDim, minScale);
-    /// max is 3m
-    maxScale = Math.max(maxSize / maxDim, maxScale);
-
-    node.getScaleController().setMinScale(minScale);
-    node.getScaleController().setMaxScale(maxScale);
+    // Set the min/max scale based on size not factors, using the largest dimension.
+    RenderableBounds bounds = RenderableBounds.of(node.getRenderable());
+    applyScaleRange(node, bounds.getScaleForSize(minSize), bounds.getScaleForSize(maxSize));
   }
 
   /**
-   * Resets the context by removing the nodes from the scene.
+   * Sets the min and max scale values so the node can be scaled between 1cm and 3m.
+   * @param node the TransformableNode.
+   */
+  public static void setScaleRange(TransformableNode node) {
+    RenderableBounds bounds = RenderableBounds.of(node.getRenderable());
+    applyScaleRange(node, bounds.getRecommendedMinScale(), bounds.getRecommendedMaxScale());
+  }
+
+  // Widens the scale range of the node to include the given scales.
+  private static void applyScaleRange(TransformableNode node, float minScale, float maxScale) {
+    node.getScaleController().setMinScale(
+            Math.min(minScale, node.getScaleController().getMinScale()));
+    node.getScaleController().setMaxScale(
+            Math.max(maxScale, node.getScaleController().getMaxScale()));
+  }
+
+  /**
+   * Resets the context by removing all the placed models from the scene.  The shared
+   * renderables are kept, so placing the same assets again does not reload them, and the info
+   * cards are returned to the pool.
    */
   public void resetContext() {
-    if (modelNode != null) {
-      modelNode.setParent(null);
-      modelNode = null;
+    for (Placement placement : placements) {
+      placement.detach();
+      if (placement.getInfoCard() != null) {
+        infoCardPool.release(placement.getInfoCard());
+      }
     }
+    placements.clear();
+    current = null;
+  }
 
-    if (anchorNode != null) {
-      anchorNode.getAnchor().detach();
-      anchorNode.setParent(null);
-      anchorNode = null;
+  /**
+   * Removes a placement from the scene, for example when its model is not loaded after all.
+   */
+  public void removePlacement(Placement placement) {
+    placement.detach();
+    if (placement.getInfoCard() != null) {
+      infoCardPool.release(placement.getInfoCard());
     }
-    if (infoCard != null) {
-      infoCard.setParent(null);
-      infoCard = null;
+    placements.remove(placement);
+    if (current == placement) {
+      current = placements.isEmpty() ? null : placements.get(placements.size() - 1);
     }
   }
 
   /**
-   * Returns true if the the model node is available.
+   * Returns the item of the most recent placement, or null if there is none.
+   */
+  public GalleryItem getCurrentItem() {
+    return current != null ? current.getItem() : null;
+  }
+
+  /**
+   * Returns true if at least one model is placed.
    */
   public boolean hasModelNode() {
-    return modelNode != null;
+    return current != null;
+  }
+
+  /**
+   * Returns the placed models, in placement order.
+   */
+  public List<Placement> getPlacements() {
+    return Collections.unmodifiableList(placements);
+  }
+
+  /**
+   * Returns the number of distinct renderables shared by the placements.
+   */
+  public int getSharedRenderableCount() {
+    return sharedRenderables.size();
+  }
+
+  /**
+   * Returns the keys of the assets placed in the scene.
+   */
+  public Set<String> getPlacedKeys() {
+    Set<String> keys = new HashSet<>();
+    for (Placement placement : placements) {
+      if (!placement.isDetached()) {
+        keys.add(placement.getItem().getKey());
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Releases the renderables kept for assets that are no longer placed, along with their
+   * billboards and the free info cards.
+   */
+  public void releaseUnplacedRenderables() {
+    Set<String> placedKeys = getPlacedKeys();
+    sharedRenderables.keySet().retainAll(placedKeys);
+    lodController.retain(placedKeys);
+    infoCardPool.trim();
+  }
+
+  /**
+   * Returns the number of renderables held for the scene: the model renderables, the billboards
+   * and the free info cards.
+   */
+  public int getRenderableCount() {
+    return sharedRenderables.size() + lodController.getBillboardCount()
+            + infoCardPool.getFreeCount();
+  }
+
+  /**
+   * Returns the renderable already loaded for the item's asset, or null.
+   */
+  public ModelRenderable getSharedRenderable(GalleryItem item) {
+    return sharedRenderables.get(item.getKey());
   }
 
   /**
-   * Generates a string for describing the node's scale and rotation.
+   * Generates a string for describing the scale and rotation of the most recent placement.
    * @return string for model info, or null if the node is not available.
    */
   public String generateNodeInfo() {
-    if (scene == null) {
+    if (scene == null || current == null) {
       return null;
     }
     Camera camera = scene.getCamera();
+    Node modelNode = current.getModelNode();
     String msg = null;
-    if (modelNode != null && modelNode.getRenderable() != null) {
+    if (current.getBounds() != null) {
       Vector3 scale = modelNode.getLocalScale();
-      Vector3 size = ((Box) modelNode.getCollisionShape()).getSize();
-      size.x *= scale.x;
-      size.y *= scale.y;
-      size.z *= scale.z;
+      Vector3 size = current.getBounds().getSize();
       Vector3 dir = Vector3.subtract(modelNode.getForward(), camera.getForward());
-      msg = String.format(Locale.getDefault(), "%s\n%s\n%s",
-              String.format(Locale.getDefault(), "scale: (%.02f, %.02f, %.02f)",
-                      scale.x,
-                      scale.y,
-                      scale.z),
-              String.format(Locale.getDefault(), "size: (%.02f, %.02f, %.02f)",
-                      size.x,
-                      size.y,
-                      size.z),
-              String.format(Locale.getDefault(), "dir: (%.02f, %.02f, %.02f)",
-                      dir.x,
-                      dir.y,
-                      dir.z)
-      );
-
+      msg = nodeInfoFormatter.format(scale.x, scale.y, scale.z,
+              size.x * scale.x, size.y * scale.y, size.z * scale.z,
+              dir.x, dir.y, dir.z);
     }
     return msg;
   }
 
   /**
-   * Rotates the info card in the  scene to face the camera.
+   * Updates the level of detail of the placed models.  Called once per frame.
+   */
+  public void updateLevelOfDetail() {
+    if (sceneView != null) {
+      lodController.update(sceneView, placements);
+    }
+  }
+
+  /**
+   * Rotates the info cards and billboards in the scene to face the camera.  Nodes are only
+   * rotated when the camera or the node moved enough to matter.
    */
   public void rotateInfoCardToCamera() {
     if (scene == null) {
       return;
     }
-    Camera camera = scene.getCamera();
-    // Rotate the card to look at the camera.
-    if (infoCard != null) {
-      Vector3 cameraPosition = camera.getWorldPosition();
-      Vector3 cardPosition = infoCard.getWorldPosition();
-      Vector3 direction = Vector3.subtract(cameraPosition, cardPosition);
-      Quaternion lookRotation = Quaternion.lookRotation(direction, Vector3.up());
-      infoCard.setWorldRotation(lookRotation);
-    }
+    billboarder.update(scene.getCamera().getWorldPosition(), placements);
+  }
+
+  /**
+   * Returns the rotation counters of the info cards and billboards, for logging.
+   */
+  public String getBillboardSummary() {
+    return billboarder.summary();
   }
 
   /**
-   * Resets the model node and positions it.
+   * Places a new model node in the scene, used in non-AR mode.
+   * @param item the Poly gallery item to place.
    * @param position the world position of the node.
+   * @return the new placement.
    */
-  public void resetModelNode(Vector3 position) {
-    if (modelNode != null) {
-      modelNode.setParent(null);
-    }
-    //Create the model node each time so scale and rotation is reset.
-    modelNode = new Node();
+  public Placement addModelNode(GalleryItem item, Vector3 position) {
+    Node modelNode = new Node();
     modelNode.setParent(scene);
     modelNode.setWorldPosition(position);
     modelNode.setWorldRotation(Quaternion.identity());
     modelNode.setWorldScale(Vector3.one());
+    return addPlacement(new Placement(item, null, modelNode));
   }
 
   /**
-   * Attaches the info card displaying the information for the given item to the
-   * model node.
-   * @param selectedItem the Poly gallery item describing the renderable.
+   * Places a new model node attached to a new anchor node, used in AR mode.
+   * @param item the Poly gallery item to place.
+   * @param anchor the anchor of the placement.
+   * @param node the node for the model.
+   * @return the new placement.
    */
-  public void attachInfoCardNode(GalleryItem selectedItem) {
-    if (infoCard == null) {
-      infoCard = new Node();
-      ViewRenderable.builder()
-              .setView(context, R.layout.model_info)
-              .build()
-              .thenAccept(
-                      (renderable) -> {
-                        infoCard.setRenderable(renderable);
-                        setModelLabel(renderable, selectedItem);
-                      })
-              .exceptionally(
-                      (throwable) -> {
-                        throw new AssertionError(
-                                "Could not load plane card view.", throwable);
-                      });
-    } else {
-      setModelLabel((ViewRenderable) infoCard.getRenderable(), selectedItem);
-    }
-    infoCard.setParent(modelNode);
-    float height = .5f;
-    if (modelNode.getRenderable() instanceof ModelRenderable) {
-      height = getRenderableHeight((ModelRenderable) modelNode.getRenderable());
-    }
-    infoCard.setLocalPosition(new Vector3(0, height, 0));
+  public Placement addAnchoredModelNode(GalleryItem item, Anchor anchor,
+                                        TransformableNode node) {
+    AnchorNode anchorNode = new AnchorNode(anchor);
+    anchorNode.setParent(scene);
+    node.setParent(anchorNode);
+    return addPlacement(new Placement(item, anchorNode, node));
   }
 
-  /**
-   * Returns the height of the renderable in local scale in meters.
-   */
-  private float getRenderableHeight(ModelRenderable renderable) {
-    Box box = (Box) renderable.getCollisionShape();
-    return Objects.requireNonNull(box).getCenter().y + box.getExtents().y;
+  private Placement addPlacement(Placement placement) {
+    placements.add(placement);
+    current = placement;
+    return placement;
   }
 
   /**
-   * Sets the information from the selected item on the view renderable which
-   * is expected to have a single text vew.
+   * Attaches the info card displaying the information for the placed item to the
+   * model node.  The card is taken from the pool of info cards.
+   * @param placement the placement the card describes.
    */
-  private void setModelLabel(@NonNull ViewRenderable viewRenderable,
-                             @NonNull GalleryItem selectedItem) {
-    TextView textView = (TextView) viewRenderable.getView();
-    textView.setText(String.format("%s by %s\n%s",
-            selectedItem.getDisplayName(), selectedItem.getAuthor(), selectedItem.getLicense()));
+  public void attachInfoCardNode(Placement placement) {
+    InfoCard infoCard = placement.getInfoCard();
+    if (infoCard == null) {
+      infoCard = infoCardPool.acquire();
+      placement.setInfoCard(infoCard);
+    }
+    infoCard.setItem(placement.getItem());
+    Node modelNode = placement.getModelNode();
+    infoCard.setParent(modelNode);
+    infoCard.invalidateBillboard();
+    float height = .5f;
+    if (placement.getBounds() != null) {
+      height = placement.getBounds().getHeight();
+    }
+    infoCard.setLocalPosition(new Vector3(0, height, 0));
   }
 
   /**
-   * Sets the renderable on the model node and repositions the info card node accordingly.
+   * Sets the renderable on the model node of the placement and repositions its info card node
+   * accordingly.  The first renderable loaded for an asset is shared by all of its placements.
+   * @return false if the placement was removed in the meantime.
    */
-  public void setModelRenderable(ModelRenderable renderable) {
-    modelNode.setRenderable(renderable);
-    infoCard.setLocalPosition(new Vector3(0, getRenderableHeight(renderable), 0));
+  public boolean setModelRenderable(Placement placement, ModelRenderable renderable) {
+    return setModelRenderable(placement, renderable, null);
   }
 
   /**
-   * Resets the anchor node used in AR mode.
-   * This detaches any existing anchor and sets the anchor to the value passed in and
-   * sets the parent as the scene.
+   * Sets the renderable on the model node of the placement, tracing it under the given span.
+   * @return false if the placement was removed in the meantime.
    */
-  public void resetAnchorNode(Anchor anchor) {
-    // Clean up old anchor
-    if (anchorNode != null && anchorNode.getAnchor() != null) {
-      anchorNode.getAnchor().detach();
-    } else {
-      anchorNode = new AnchorNode();
+  public boolean setModelRenderable(Placement placement, ModelRenderable renderable,
+                                    Tracer.Span parent) {
+    if (placement.isDetached()) {
+      return false;
     }
-    anchorNode.setParent(scene);
-    anchorNode.setAnchor(anchor);
-  }
-
-  /**
-   * Connects the node to the anchor node.
-   */
-  public void attachModelNodeToAnchorNode(TransformableNode node) {
-    if (modelNode != null) {
-      modelNode.setParent(null);
+    Tracer.Span span = Tracer.begin("scene.attach", parent);
+    String key = placement.getItem().getKey();
+    ModelRenderable shared = sharedRenderables.get(key);
+    if (shared == null) {
+      shared = renderable;
+      sharedRenderables.put(key, shared);
     }
-
-    modelNode = node;
-    modelNode.setParent(anchorNode);
+    placement.getModelNode().setRenderable(shared);
+    placement.setRenderable(shared);
+    if (placement.getInfoCard() != null) {
+      placement.getInfoCard().setLocalPosition(
+              new Vector3(0, placement.getBounds().getHeight(), 0));
+    }
+    span.end();
+    return true;
   }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records the time of the startup phases, measured from the start of the process, so cold start
+ * can be tracked.  The whole startup is also recorded as a trace span.
+ */
+public class StartupTimer {
+  private static final String TAG = "StartupTimer";
+
+  private final long processStart = Process.getStartElapsedRealtime();
+  private final StringBuilder phases = new StringBuilder();
+  private final Tracer.Span span = Tracer.begin("startup", null);
+  private long lastMark = processStart;
+  private boolean finished;
+
+  /**
+   * Marks the end of a startup phase.
+   *
+   * @param phase the name of the phase.
+   */
+  public synchronized void mark(String phase) {
+    if (finished) {
+      return;
+    }
+    long now = SystemClock.elapsedRealtime();
+    phases.append(phases.length() == 0 ? "" : ", ")
+            .append(phase).append('=').append(now - processStart)
+            .append("ms (+").append(now - lastMark).append("ms)");
+    lastMark = now;
+  }
+
+  /**
+   * Marks the last phase and logs the time of all the phases.  Later calls are ignored.
+   *
+   * @param phase the name of the last phase.
+   */
+  public synchronized void finish(String phase) {
+    if (finished) {
+      return;
+    }
+    mark(phase);
+    finished = true;
+    span.end();
+    Log.i(TAG, "Startup: " + phases);
+  }
+
+  /**
+   * Returns true once startup is finished.
+   */
+  public synchronized boolean isFinished() {
+    return finished;
+  }
+}
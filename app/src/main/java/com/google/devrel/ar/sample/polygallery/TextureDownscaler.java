@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Scales down model textures larger than a maximum dimension and recompresses them.
+ * <p>
+ * Only color textures without transparency may be compressed as JPEG.  Normal, metallic-roughness
+ * and occlusion maps hold data rather than colors, and JPEG artifacts show up as shading errors,
+ * so they are compressed as PNG.  Textures are decoded without premultiplying the alpha, so the
+ * color of transparent pixels and the data packed in the alpha channel are kept.
+ */
+public class TextureDownscaler {
+  private static final int JPEG_QUALITY = 85;
+
+  private final int maxDimension;
+
+  /**
+   * A recompressed texture.
+   */
+  public static class Result {
+    public final byte[] data;
+    public final String mimeType;
+
+    Result(byte[] data, String mimeType) {
+      this.data = data;
+      this.mimeType = mimeType;
+    }
+  }
+
+  /**
+   * Creates a downscaler.
+   *
+   * @param maxDimension the largest width or height kept, 0 to keep all the textures.
+   */
+  public TextureDownscaler(int maxDimension) {
+    this.maxDimension = maxDimension;
+  }
+
+  /**
+   * Returns the texture scaled down to fit the maximum dimension, or null if it already fits or
+   * cannot be decoded.  This can be called from any thread.
+   *
+   * @param data  the encoded texture.
+   * @param lossy true if the texture is a base color texture, which may be compressed as JPEG
+   *              when it has no transparency.
+   */
+  public Result downscale(byte[] data, boolean lossy) {
+    if (maxDimension <= 0) {
+      return null;
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    int largest = Math.max(options.outWidth, options.outHeight);
+    if (largest <= maxDimension) {
+      return null;
+    }
+    // Scale by decoding at the smallest power of two reduction that fits.  A canvas cannot draw
+    // a bitmap that is not premultiplied, and textures usually have power of two sizes anyway.
+    options.inJustDecodeBounds = false;
+    options.inPremultiplied = false;
+    options.inSampleSize = 2;
+    while (largest / options.inSampleSize > maxDimension) {
+      options.inSampleSize *= 2;
+    }
+    Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    if (decoded == null) {
+      return null;
+    }
+    boolean jpeg = lossy && !decoded.hasAlpha();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4);
+    decoded.compress(jpeg ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG,
+            JPEG_QUALITY, output);
+    decoded.recycle();
+    return new Result(output.toByteArray(), jpeg ? "image/jpeg" : "image/png");
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Tiny previews of the thumbnails, shown while the thumbnail loads.
+ * <p>
+ * A preview is the thumbnail scaled down to 4x4 pixels.  It is computed when the thumbnail is
+ * first decoded and stored by asset key as 48 bytes of RGB in a {@link PreviewStore}, so it is
+ * available without a network request on later searches and launches.  The least recently used
+ * previews are evicted one at a time when the store is full.  When shown, the 4x4 bitmap is
+ * scaled up with filtering, which gives a blurred impression of the thumbnail.
+ */
+public final class ThumbnailPreviews {
+  private static final String DIRECTORY_NAME = "thumbnail_previews";
+
+  // The shared preferences the previews used to be stored in.
+  private static final String LEGACY_PREFERENCES_NAME = "thumbnail_previews";
+
+  // The width and height of a preview in pixels.
+  private static final int SIZE = 4;
+
+  // The size of a stored preview in bytes.
+  private static final int PREVIEW_BYTES = SIZE * SIZE * 3;
+
+  // The most previews stored.
+  private static final int MAX_PREVIEWS = 2000;
+
+  // Writes, deletes and reloads the preview files in order.
+  private static final Executor io = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "ThumbnailPreviews");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static volatile PreviewStore store;
+  private static volatile Resources resources;
+
+  private ThumbnailPreviews() {
+  }
+
+  /**
+   * Opens the stored previews.  Until this is called, no previews are stored or returned.  The
+   * stored previews are indexed in the background and read when requested.  This touches the
+   * disk, so it should be called on a background thread.
+   */
+  public static void initialize(Context context) {
+    context.getApplicationContext().deleteSharedPreferences(LEGACY_PREFERENCES_NAME);
+    PreviewStore opened = new PreviewStore(
+            new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME),
+            MAX_PREVIEWS, io);
+    resources = context.getApplicationContext().getResources();
+    store = opened;
+    io.execute(opened::load);
+  }
+
+  /**
+   * Reads the stored previews of the assets in the background, so they can be shown as soon as
+   * the assets are.
+   *
+   * @param keys the keys of the assets.
+   */
+  public static void preload(Iterable<String> keys) {
+    PreviewStore store = ThumbnailPreviews.store;
+    if (store != null) {
+      store.preload(keys);
+    }
+  }
+
+  /**
+   * Stores the preview of a thumbnail, unless one is already stored for the asset.
+   *
+   * @param key       the key of the asset.
+   * @param thumbnail the decoded thumbnail.
+   */
+  public static void put(String key, Bitmap thumbnail) {
+    PreviewStore store = ThumbnailPreviews.store;
+    if (store == null || thumbnail == null || store.contains(key)) {
+      return;
+    }
+    Bitmap scaled = Bitmap.createScaledBitmap(thumbnail, SIZE, SIZE, true);
+    int[] pixels = new int[SIZE * SIZE];
+    scaled.getPixels(pixels, 0, SIZE, 0, 0, SIZE, SIZE);
+    if (scaled != thumbnail) {
+      scaled.recycle();
+    }
+    byte[] rgb = new byte[PREVIEW_BYTES];
+    for (int i = 0; i < pixels.length; i++) {
+      rgb[i * 3] = (byte) (pixels[i] >> 16);
+      rgb[i * 3 + 1] = (byte) (pixels[i] >> 8);
+      rgb[i * 3 + 2] = (byte) pixels[i];
+    }
+    store.put(key, rgb);
+  }
+
+  /**
+   * Returns the number of previews held in memory.
+   */
+  public static int getLoadedCount() {
+    PreviewStore store = ThumbnailPreviews.store;
+    return store != null ? store.getLoadedCount() : 0;
+  }
+
+  /**
+   * Returns the bytes of the previews held in memory.
+   */
+  public static long getLoadedBytes() {
+    return (long) getLoadedCount() * PREVIEW_BYTES;
+  }
+
+  /**
+   * Drops the previews from memory.  They stay on disk and are read again when requested.
+   */
+  public static void trim() {
+    PreviewStore store = ThumbnailPreviews.store;
+    if (store != null) {
+      store.trim();
+    }
+  }
+
+  /**
+   * Returns the preview for an asset, or null if there is none.  After {@link #trim()}, a stored
+   * preview is read again in the background and returned by a later call.
+   *
+   * @param key the key of the asset.
+   */
+  public static Drawable get(String key) {
+    PreviewStore store = ThumbnailPreviews.store;
+    byte[] rgb = store != null ? store.get(key) : null;
+    if (rgb == null || rgb.length != PREVIEW_BYTES) {
+      return null;
+    }
+    int[] pixels = new int[SIZE * SIZE];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = 0xff000000 | (rgb[i * 3] & 0xff) << 16 | (rgb[i * 3 + 1] & 0xff) << 8
+              | (rgb[i * 3 + 2] & 0xff);
+    }
+    BitmapDrawable drawable = new BitmapDrawable(resources,
+            Bitmap.createBitmap(pixels, SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    drawable.setFilterBitmap(true);
+    return drawable;
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timing spans of the model loading pipeline.
+ * <p>
+ * A span is started with {@link #begin(String, Span)}, optionally under a parent span, and
+ * ended with {@link Span#end()}, possibly on another thread.  Ended spans are kept in a fixed
+ * size ring buffer, the oldest being overwritten, and can be written as Chrome trace JSON
+ * (viewable in chrome://tracing) or as per-name duration histograms.  When tracing is disabled,
+ * begin returns a shared no-op span.
+ */
+public final class Tracer {
+  // The number of spans kept.
+  private static final int CAPACITY = 4096;
+
+  // Upper bounds, in milliseconds, of the histogram buckets.  The last bucket has no bound.
+  private static final long[] BUCKET_BOUNDS_MS =
+          {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384};
+
+  private static final Span NOOP = new Span(null, 0, 0, 0);
+  private static final AtomicLong nextId = new AtomicLong(1);
+
+  // The ring buffer, one entry per ended span.
+  private static final String[] names = new String[CAPACITY];
+  private static final long[] ids = new long[CAPACITY];
+  private static final long[] traceIds = new long[CAPACITY];
+  private static final long[] parentIds = new long[CAPACITY];
+  private static final long[] threadIds = new long[CAPACITY];
+  private static final long[] startNanos = new long[CAPACITY];
+  private static final long[] durationNanos = new long[CAPACITY];
+  private static long recorded;
+
+  private static volatile boolean enabled;
+
+  private Tracer() {
+  }
+
+  /**
+   * Enables or disables the recording of new spans.
+   */
+  public static void setEnabled(boolean enabled) {
+    Tracer.enabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts a span.
+   *
+   * @param name   the name of the span, used to group spans in the histograms.
+   * @param parent the parent span, or null to start a new trace.
+   * @return the span, to be ended when the work is done.
+   */
+  public static Span begin(String name, Span parent) {
+    if (!enabled) {
+      return NOOP;
+    }
+    long id = nextId.getAndIncrement();
+    long traceId = parent != null && parent != NOOP ? parent.traceId : id;
+    long parentId = parent != null ? parent.id : 0;
+    return new Span(name, id, traceId, parentId);
+  }
+
+  // Stores an ended span in the ring buffer.
+  private static synchronized void record(Span span, long endNanos) {
+    int slot = (int) (recorded % CAPACITY);
+    names[slot] = span.name;
+    ids[slot] = span.id;
+    traceIds[slot] = span.traceId;
+    parentIds[slot] = span.parentId;
+    threadIds[slot] = span.threadId;
+    startNanos[slot] = span.startNanos;
+    durationNanos[slot] = endNanos - span.startNanos;
+    recorded++;
+  }
+
+  /**
+   * Forgets all the recorded spans.
+   */
+  public static synchronized void clear() {
+    recorded = 0;
+    Arrays.fill(names, null);
+  }
+
+  /**
+   * Writes the recorded spans in the Chrome trace event format.
+   */
+  public static void writeChromeTrace(Writer writer) throws IOException {
+    List<Object[]> spans = snapshot();
+    writer.write("{\"traceEvents\":[");
+    for (int i = 0; i < spans.size(); i++) {
+      Object[] span = spans.get(i);
+      if (i > 0) {
+        writer.write(",\n");
+      }
+      writer.write(String.format(Locale.US,
+              "{\"name\":\"%s\",\"cat\":\"poly\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,"
+                      + "\"ts\":%.3f,\"dur\":%.3f,"
+                      + "\"args\":{\"id\":%d,\"trace\":%d,\"parent\":%d}}",
+              escape((String) span[0]), (Long) span[4],
+              (Long) span[5] / 1000.0, (Long) span[6] / 1000.0,
+              (Long) span[1], (Long) span[2], (Long) span[3]));
+    }
+    writer.write("],\"displayTimeUnit\":\"ms\"}\n");
+    writer.flush();
+  }
+
+  /**
+   * Writes a JSON object with, for each span name, the number of spans, the total and maximum
+   * durations and a histogram of the durations in power of two millisecond buckets.
+   */
+  public static void writeHistograms(Writer writer) throws IOException {
+    Map<String, long[]> histograms = new TreeMap<>();
+    Map<String, long[]> totals = new TreeMap<>();
+    for (Object[] span : snapshot()) {
+      String name = (String) span[0];
+      long durationMs = (Long) span[6] / 1000000;
+      long[] buckets = histograms.get(name);
+      long[] total = totals.get(name);
+      if (buckets == null) {
+        buckets = new long[BUCKET_BOUNDS_MS.length + 1];
+        histograms.put(name, buckets);
+        total = new long[3];
+        totals.put(name, total);
+      }
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_MS.length && durationMs >= BUCKET_BOUNDS_MS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket]++;
+      total[0]++;
+      total[1] += durationMs;
+      total[2] = Math.max(total[2], durationMs);
+    }
+
+    writer.write("{");
+    boolean first = true;
+    for (Map.Entry<String, long[]> entry : histograms.entrySet()) {
+      long[] total = totals.get(entry.getKey());
+      writer.write(first ? "\n" : ",\n");
+      first = false;
+      writer.write(String.format(Locale.US,
+              "\"%s\":{\"count\":%d,\"totalMs\":%d,\"maxMs\":%d,\"buckets\":{",
+              escape(entry.getKey()), total[0], total[1], total[2]));
+      long[] buckets = entry.getValue();
+      for (int i = 0; i < buckets.length; i++) {
+        String label = i < BUCKET_BOUNDS_MS.length ? "<" + BUCKET_BOUNDS_MS[i] + "ms"
+                : ">=" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] + "ms";
+        writer.write((i > 0 ? "," : "") + "\"" + label + "\":" + buckets[i]);
+      }
+      writer.write("}}");
+    }
+    writer.write("\n}\n");
+    writer.flush();
+  }
+
+  // Copies the recorded spans, oldest first.  Each entry holds the name, id, trace id,
+  // parent id, thread id, start and duration.
+  private static synchronized List<Object[]> snapshot() {
+    int count = (int) Math.min(recorded, CAPACITY);
+    List<Object[]> spans = new ArrayList<>(count);
+    for (long i = recorded - count; i < recorded; i++) {
+      int slot = (int) (i % CAPACITY);
+      spans.add(new Object[]{names[slot], ids[slot], traceIds[slot], parentIds[slot],
+              threadIds[slot], startNanos[slot], durationNanos[slot]});
+    }
+    return spans;
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  /**
+   * A span being timed.
+   */
+  public static final class Span {
+    private final String name;
+    private final long id;
+    private final long traceId;
+    private final long parentId;
+    private final long threadId;
+    private final long startNanos;
+    private boolean ended;
+
+    private Span(String name, long id, long traceId, long parentId) {
+      this.name = name;
+      this.id = id;
+      this.traceId = traceId;
+      this.parentId = parentId;
+      this.threadId = Thread.currentThread().getId();
+      this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the span.  Only the first call has an effect.
+     */
+    public void end() {
+      if (this == NOOP) {
+        return;
+      }
+      long endNanos = System.nanoTime();
+      synchronized (this) {
+        if (ended) {
+          return;
+        }
+        ended = true;
+      }
+      record(this, endNanos);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Release builds do not contain the local Poly server, and do not allow the cleartext traffic it
+ * needs, so starting it always fails.
+ */
+class LocalServerLauncher {
+
+  String start(File fixtures) throws IOException {
+    throw new IOException("The local Poly server is only available in debug builds");
+  }
+
+  void stop() {
+  }
+}
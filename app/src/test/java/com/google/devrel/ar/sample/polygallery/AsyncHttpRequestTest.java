@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class AsyncHttpRequestTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String TEXT = "hello world";
+
+  private static String decode(byte[] body, String contentEncoding) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (InputStream input = AsyncHttpRequest.decodeStream(new ByteArrayInputStream(body),
+            contentEncoding)) {
+      byte[] buffer = new byte[256];
+      int n;
+      while ((n = input.read(buffer)) > 0) {
+        output.write(buffer, 0, n);
+      }
+    }
+    return new String(output.toByteArray(), UTF_8);
+  }
+
+  private static byte[] deflate(boolean raw) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (DeflaterOutputStream deflater = new DeflaterOutputStream(output,
+            new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+      deflater.write(TEXT.getBytes(UTF_8));
+    }
+    return output.toByteArray();
+  }
+
+  @Test
+  public void decodesGzip() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+      gzip.write(TEXT.getBytes(UTF_8));
+    }
+    assertEquals(TEXT, decode(output.toByteArray(), "gzip"));
+  }
+
+  @Test
+  public void decodesZlibWrappedDeflate() throws IOException {
+    assertEquals(TEXT, decode(deflate(false), "deflate"));
+  }
+
+  @Test
+  public void decodesRawDeflate() throws IOException {
+    assertEquals(TEXT, decode(deflate(true), "Deflate"));
+  }
+
+  @Test
+  public void decodesRawDeflateStartingLikeZlib() throws IOException {
+    // Two stored blocks.  The first byte has 8 in its low bits, as a zlib header would: a block
+    // that is not the last, of type stored, with a padding bit set.  The header check of the
+    // first two bytes fails, so it is decoded as raw deflate.
+    byte[] body = {
+            0x08, 5, 0, (byte) ~5, (byte) 0xff, 'h', 'e', 'l', 'l', 'o',
+            0x01, 6, 0, (byte) ~6, (byte) 0xff, ' ', 'w', 'o', 'r', 'l', 'd'};
+    assertEquals(TEXT, decode(body, "deflate"));
+  }
+
+  @Test
+  public void passesOtherEncodingsThrough() throws IOException {
+    assertEquals(TEXT, decode(TEXT.getBytes(UTF_8), null));
+    assertEquals(TEXT, decode(TEXT.getBytes(UTF_8), "identity"));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+  private long now;
+
+  private CircuitBreaker newBreaker() {
+    return new CircuitBreaker(3, 1000, () -> now);
+  }
+
+  @Test
+  public void staysClosedBelowThreshold() {
+    CircuitBreaker breaker = newBreaker();
+    breaker.onFailure();
+    breaker.onFailure();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void successResetsConsecutiveFailures() {
+    CircuitBreaker breaker = newBreaker();
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onSuccess();
+    breaker.onFailure();
+    breaker.onFailure();
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void closedToOpenToHalfOpenToClosed() {
+    CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(breaker.allowRequest());
+      breaker.onFailure();
+    }
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.allowRequest());
+
+    now += 999;
+    assertFalse(breaker.allowRequest());
+
+    // Half open: a single trial goes through, the others wait for its outcome.
+    now += 1;
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    assertTrue(breaker.isOpen());
+
+    breaker.onSuccess();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void failedTrialReopensForAnotherPeriod() {
+    CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < 3; i++) {
+      breaker.onFailure();
+    }
+    now += 1000;
+    assertTrue(breaker.allowRequest());
+    breaker.onFailure();
+    assertFalse(breaker.allowRequest());
+
+    now += 999;
+    assertFalse(breaker.allowRequest());
+    now += 1;
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void trialNotSentLetsTheNextRequestThrough() {
+    CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < 3; i++) {
+      breaker.onFailure();
+    }
+    now += 1000;
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    breaker.onNotSent();
+    assertTrue(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  public void requestNotSentDoesNotCountAsFailure() {
+    CircuitBreaker breaker = newBreaker();
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onNotSent();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void hostBreakersUseTheHostClock() {
+    CircuitBreaker.setHostClock(() -> now);
+    try {
+      CircuitBreaker breaker = CircuitBreaker.forHost("poly.googleapis.com");
+      for (int i = 0; i < 5; i++) {
+        breaker.onFailure();
+      }
+      assertFalse(breaker.allowRequest());
+      now += 15000;
+      assertTrue(breaker.allowRequest());
+      assertTrue(CircuitBreaker.forHost("poly.googleapis.com") == breaker);
+      assertFalse(CircuitBreaker.forHost("other.example.com").isOpen());
+    } finally {
+      CircuitBreaker.resetAll();
+    }
+  }
+}
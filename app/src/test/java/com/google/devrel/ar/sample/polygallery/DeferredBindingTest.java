@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredBindingTest {
+  private static final int ITEMS = 500;
+  private static final int HOLDERS = 12;
+  private static final int BINDS = 20000;
+  private static final int COMPLETERS = 4;
+
+  @Test
+  public void deliversCompletedValueRightAway() {
+    DeferredBinding<String> binding = new DeferredBinding<>();
+    List<String> shown = new ArrayList<>();
+    binding.bind(CompletableFuture.completedFuture("a"), Runnable::run, shown::add);
+    assertEquals(Collections.singletonList("a"), shown);
+    assertFalse(binding.isPending());
+  }
+
+  @Test
+  public void deliversLateValueOfCurrentBind() {
+    DeferredBinding<String> binding = new DeferredBinding<>();
+    List<String> shown = new ArrayList<>();
+    CompletableFuture<String> value = new CompletableFuture<>();
+    binding.bind(value, Runnable::run, shown::add);
+    assertTrue(binding.isPending());
+    value.complete("a");
+    assertEquals(Arrays.asList(null, "a"), shown);
+    assertFalse(binding.isPending());
+  }
+
+  @Test
+  public void dropsValueOfEarlierBind() {
+    DeferredBinding<String> binding = new DeferredBinding<>();
+    List<String> shown = new ArrayList<>();
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> second = new CompletableFuture<>();
+    binding.bind(first, Runnable::run, shown::add);
+    binding.bind(second, Runnable::run, shown::add);
+    first.complete("a");
+    second.complete("b");
+    assertEquals(Arrays.asList(null, null, "b"), shown);
+  }
+
+  @Test
+  public void dropsValueAfterUnbind() {
+    DeferredBinding<String> binding = new DeferredBinding<>();
+    List<String> shown = new ArrayList<>();
+    CompletableFuture<String> value = new CompletableFuture<>();
+    binding.bind(value, Runnable::run, shown::add);
+    binding.unbind();
+    assertFalse(binding.isPending());
+    value.complete("a");
+    assertEquals(Collections.singletonList(null), shown);
+  }
+
+  @Test
+  public void failedValueIsNotDelivered() {
+    DeferredBinding<String> binding = new DeferredBinding<>();
+    List<String> shown = new ArrayList<>();
+    CompletableFuture<String> value = new CompletableFuture<>();
+    binding.bind(value, Runnable::run, shown::add);
+    value.completeExceptionally(new RuntimeException());
+    assertEquals(Collections.singletonList(null), shown);
+  }
+
+  // Scrolls quickly through the items, rebinding and recycling a small pool of holders on a
+  // single "main" thread while the thumbnails complete in random order on other threads.  No
+  // holder may ever show a thumbnail of an item it is not bound to, and once everything has
+  // completed every bound holder shows its own item.
+  @Test
+  public void fastScrollWhileThumbnailsCompleteInRandomOrder() throws Exception {
+    ExecutorService main = Executors.newSingleThreadExecutor();
+    ExecutorService completers = Executors.newFixedThreadPool(COMPLETERS);
+    try {
+      List<CompletableFuture<String>> thumbnails = new ArrayList<>();
+      List<Integer> order = new ArrayList<>();
+      for (int i = 0; i < ITEMS; i++) {
+        thumbnails.add(new CompletableFuture<>());
+        order.add(i);
+      }
+      Collections.shuffle(order, new Random(1));
+
+      // Only touched on the main thread.
+      List<DeferredBinding<String>> bindings = new ArrayList<>();
+      int[] bound = new int[HOLDERS];
+      String[] shown = new String[HOLDERS];
+      for (int h = 0; h < HOLDERS; h++) {
+        bindings.add(new DeferredBinding<>());
+        bound[h] = -1;
+      }
+      AtomicInteger stale = new AtomicInteger();
+
+      CountDownLatch start = new CountDownLatch(1);
+      for (int c = 0; c < COMPLETERS; c++) {
+        final int completer = c;
+        completers.execute(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = completer; i < ITEMS; i += COMPLETERS) {
+            int item = order.get(i);
+            thumbnails.get(item).complete(thumbnail(item));
+            Thread.yield();
+          }
+        });
+      }
+
+      Random random = new Random(2);
+      start.countDown();
+      for (int i = 0; i < BINDS; i++) {
+        // Scroll forward with some jitter, so holders are rebound to nearby items.
+        final int holder = i % HOLDERS;
+        final int item = Math.min(ITEMS - 1, i * ITEMS / BINDS + random.nextInt(HOLDERS));
+        final boolean recycle = random.nextInt(8) == 0;
+        main.execute(() -> {
+          DeferredBinding<String> binding = bindings.get(holder);
+          if (recycle) {
+            binding.unbind();
+            bound[holder] = -1;
+            return;
+          }
+          bound[holder] = item;
+          binding.bind(thumbnails.get(item), main, value -> {
+            if (value != null && !value.equals(thumbnail(bound[holder]))) {
+              stale.incrementAndGet();
+            }
+            shown[holder] = value;
+          });
+        });
+      }
+
+      completers.shutdown();
+      assertTrue(completers.awaitTermination(30, TimeUnit.SECONDS));
+      // The last callbacks were queued on the main thread when the thumbnails completed.
+      main.submit(() -> { }).get(30, TimeUnit.SECONDS);
+      main.submit(() -> {
+        for (int h = 0; h < HOLDERS; h++) {
+          assertFalse(bindings.get(h).isPending());
+          if (bound[h] >= 0) {
+            assertEquals(thumbnail(bound[h]), shown[h]);
+          }
+        }
+      }).get(30, TimeUnit.SECONDS);
+      assertEquals(0, stale.get());
+    } finally {
+      main.shutdownNow();
+      completers.shutdownNow();
+    }
+  }
+
+  private static String thumbnail(int item) {
+    return item >= 0 ? "thumbnail" + item : null;
+  }
+}
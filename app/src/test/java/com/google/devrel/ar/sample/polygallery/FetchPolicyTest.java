@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FetchPolicyTest {
+  private static final long KB = 1024;
+
+  @Before
+  public void setUp() {
+    NetworkEstimator.reset();
+  }
+
+  @After
+  public void tearDown() {
+    NetworkEstimator.reset();
+  }
+
+  // Records a one second transfer, so the throughput sample is the number of bytes.
+  private static void record(long latencyMillis, long bytesPerSecond) {
+    NetworkEstimator.recordTransfer(latencyMillis, bytesPerSecond, 1000);
+  }
+
+  private static void assertPolicy(FetchPolicy.Quality quality, int prefetchDepth,
+                                   int maxParallelRequests, int thumbnailMaxDimension) {
+    String estimates = NetworkEstimator.summary();
+    assertEquals(estimates, quality, FetchPolicy.getQuality());
+    assertEquals(estimates, prefetchDepth, FetchPolicy.getPrefetchDepth());
+    assertEquals(estimates, maxParallelRequests, FetchPolicy.getMaxParallelRequests());
+    assertEquals(estimates, thumbnailMaxDimension, FetchPolicy.getThumbnailMaxDimension());
+  }
+
+  private static void assertSlow() {
+    assertPolicy(FetchPolicy.Quality.SLOW, 0, 2, 128);
+  }
+
+  private static void assertModerate() {
+    assertPolicy(FetchPolicy.Quality.MODERATE, 4, 4, 256);
+  }
+
+  private static void assertFast() {
+    assertPolicy(FetchPolicy.Quality.FAST, 10, 6, 512);
+  }
+
+  @Test
+  public void moderateUntilThereAreEstimates() {
+    assertEquals(-1, NetworkEstimator.getThroughputBytesPerSecond());
+    assertEquals(-1, NetworkEstimator.getLatencyMillis());
+    assertModerate();
+  }
+
+  @Test
+  public void slowThroughputBoundary() {
+    record(300, 150 * KB - 1);
+    assertSlow();
+    NetworkEstimator.reset();
+    record(300, 150 * KB);
+    assertModerate();
+  }
+
+  @Test
+  public void slowLatencyBoundary() {
+    record(601, 2048 * KB);
+    assertSlow();
+    NetworkEstimator.reset();
+    record(600, 2048 * KB);
+    assertModerate();
+  }
+
+  @Test
+  public void fastThroughputBoundary() {
+    record(100, 1024 * KB);
+    assertFast();
+    NetworkEstimator.reset();
+    record(100, 1024 * KB - 1);
+    assertModerate();
+  }
+
+  @Test
+  public void fastLatencyBoundary() {
+    record(149, 2048 * KB);
+    assertFast();
+    NetworkEstimator.reset();
+    record(150, 2048 * KB);
+    assertModerate();
+  }
+
+  @Test
+  public void latencyAloneIsNeverFast() {
+    // Small transfers only update the latency, the throughput stays unknown.
+    NetworkEstimator.recordTransfer(20, 1024, 10);
+    assertEquals(-1, NetworkEstimator.getThroughputBytesPerSecond());
+    assertModerate();
+    NetworkEstimator.reset();
+    NetworkEstimator.recordTransfer(900, 1024, 10);
+    assertSlow();
+  }
+
+  @Test
+  public void averageMovesGraduallyToSlowSamples() {
+    record(100, 2048 * KB);
+    assertFast();
+    // The newest sample has a weight of 0.3, so from 2MB/s the average of samples of 100KB/s
+    // goes below the fast threshold after 3 samples and below the slow threshold after 11.  The
+    // latency of 100ms does not change.
+    for (int i = 1; i <= 11; i++) {
+      record(100, 100 * KB);
+      FetchPolicy.Quality expected = i < 3 ? FetchPolicy.Quality.FAST
+              : i < 11 ? FetchPolicy.Quality.MODERATE : FetchPolicy.Quality.SLOW;
+      assertEquals("sample " + i, expected, FetchPolicy.getQuality());
+    }
+    assertSlow();
+  }
+
+  @Test
+  public void averageOfLatencySamples() {
+    record(100, 2048 * KB);
+    record(100 + 1000, 2048 * KB);
+    // 100 + 0.3 * 1000.
+    assertEquals(400, NetworkEstimator.getLatencyMillis());
+    assertModerate();
+  }
+
+  @Test
+  public void thumbnailSampleSizeFollowsTheQuality() {
+    assertEquals(4, FetchPolicy.getThumbnailSampleSize(1024, 512));
+    assertEquals(1, FetchPolicy.getThumbnailSampleSize(256, 256));
+    record(900, 100 * KB);
+    assertEquals(8, FetchPolicy.getThumbnailSampleSize(1024, 512));
+    NetworkEstimator.reset();
+    record(100, 2048 * KB);
+    assertEquals(2, FetchPolicy.getThumbnailSampleSize(1024, 512));
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoadStateTest {
+  private static final int THREADS = 8;
+  private static final int STRESS_LOADS = 2000;
+
+  @Test
+  public void loadsOnceAndKeepsTheValue() {
+    LoadState<String> state = new LoadState<>(0);
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<CompletableFuture<String>> loader = () -> {
+      loads.incrementAndGet();
+      return CompletableFuture.completedFuture("value");
+    };
+    assertEquals(LoadState.Phase.IDLE, state.getPhase());
+    assertNull(state.getFuture());
+
+    CompletableFuture<String> first = state.load(loader);
+    assertEquals("value", first.join());
+    assertEquals(LoadState.Phase.LOADED, state.getPhase());
+    assertEquals("value", state.getNow());
+    assertSame(first, state.load(loader));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void evictedValueIsLoadedAgain() {
+    LoadState<String> state = new LoadState<>(0);
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<CompletableFuture<String>> loader =
+            () -> CompletableFuture.completedFuture("value" + loads.incrementAndGet());
+    state.load(loader);
+    assertTrue(state.evict());
+    assertEquals(LoadState.Phase.EVICTED, state.getPhase());
+    assertNull(state.getNow());
+    assertNull(state.getFuture());
+    assertFalse(state.evict());
+    assertEquals("value2", state.load(loader).join());
+    assertEquals(LoadState.Phase.LOADED, state.getPhase());
+  }
+
+  @Test
+  public void loadingValueIsNotEvicted() {
+    LoadState<String> state = new LoadState<>(0);
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> future = state.load(() -> pending);
+    assertEquals(LoadState.Phase.LOADING, state.getPhase());
+    assertFalse(state.evict());
+    assertNull(state.getNow());
+    pending.complete("value");
+    assertEquals("value", future.join());
+    assertEquals(LoadState.Phase.LOADED, state.getPhase());
+  }
+
+  @Test
+  public void failureIsKeptForTheRetryInterval() {
+    LoadState<String> state = new LoadState<>(60000);
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<CompletableFuture<String>> failing = () -> {
+      loads.incrementAndGet();
+      CompletableFuture<String> future = new CompletableFuture<>();
+      future.completeExceptionally(new RuntimeException("offline"));
+      return future;
+    };
+    CompletableFuture<String> first = state.load(failing);
+    assertTrue(first.isCompletedExceptionally());
+    assertEquals(LoadState.Phase.FAILED, state.getPhase());
+    assertSame(first, state.load(failing));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void failureIsRetriedAfterTheInterval() {
+    LoadState<String> state = new LoadState<>(0);
+    state.load(() -> {
+      throw new IllegalStateException("loader failed");
+    });
+    assertEquals(LoadState.Phase.FAILED, state.getPhase());
+    assertEquals("value", state.load(() -> CompletableFuture.completedFuture("value")).join());
+    assertEquals(LoadState.Phase.LOADED, state.getPhase());
+  }
+
+  // Many threads request an idle value at the same time, exactly one of them starts the load.
+  @Test
+  public void concurrentRequestsStartOneLoad() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (int round = 0; round < 200; round++) {
+        LoadState<Integer> state = new LoadState<>(0);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<CompletableFuture<Integer>>> requests = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+          requests.add(CompletableFuture.supplyAsync(() -> {
+            await(start);
+            return state.load(() -> {
+              loads.incrementAndGet();
+              return pending;
+            });
+          }, executor));
+        }
+        start.countDown();
+        CompletableFuture<Integer> first = requests.get(0).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<CompletableFuture<Integer>> request : requests) {
+          assertSame(first, request.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        pending.complete(round);
+        assertEquals(Integer.valueOf(round), first.join());
+        assertEquals(LoadState.Phase.LOADED, state.getPhase());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // Threads load, evict and read the value while the loads complete or fail on other threads,
+  // until enough loads have started.  Only one load may be in flight at any time, and every
+  // returned future must complete.
+  @Test
+  public void racesBetweenLoadsFailuresAndEvictions() throws Exception {
+    LoadState<Integer> state = new LoadState<>(0);
+    ExecutorService completers = Executors.newFixedThreadPool(2);
+    ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+    AtomicInteger loads = new AtomicInteger();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    AtomicInteger badReads = new AtomicInteger();
+    Supplier<CompletableFuture<Integer>> loader = () -> {
+      int load = loads.incrementAndGet();
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      CompletableFuture<Integer> future = new CompletableFuture<>();
+      completers.execute(() -> {
+        inFlight.decrementAndGet();
+        if (ThreadLocalRandom.current().nextInt(4) == 0) {
+          future.completeExceptionally(new RuntimeException("load " + load + " failed"));
+        } else {
+          future.complete(load);
+        }
+      });
+      return future;
+    };
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<CompletableFuture<List<CompletableFuture<Integer>>>> workers = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final long seed = t;
+        workers.add(CompletableFuture.supplyAsync(() -> {
+          await(start);
+          Random random = new Random(seed);
+          List<CompletableFuture<Integer>> futures = new ArrayList<>();
+          long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+          while (loads.get() < STRESS_LOADS && System.nanoTime() < deadline) {
+            switch (random.nextInt(3)) {
+              case 0:
+                futures.add(state.load(loader));
+                break;
+              case 1:
+                state.evict();
+                break;
+              default:
+                // A value is only returned while loaded, and it is one of the loaded values.
+                Integer value = state.getNow();
+                if (value != null && (value < 1 || value > loads.get())) {
+                  badReads.incrementAndGet();
+                }
+                break;
+            }
+          }
+          return futures;
+        }, callers));
+      }
+      start.countDown();
+      List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (CompletableFuture<List<CompletableFuture<Integer>>> worker : workers) {
+        futures.addAll(worker.get(60, TimeUnit.SECONDS));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+              .handle((ignored, throwable) -> null).get(60, TimeUnit.SECONDS);
+
+      assertEquals(1, maxInFlight.get());
+      assertEquals(0, inFlight.get());
+      assertEquals(0, badReads.get());
+      assertTrue(loads.get() >= STRESS_LOADS);
+      int distinct = (int) futures.stream().distinct().count();
+      assertTrue(distinct <= loads.get());
+      LoadState.Phase phase = state.getPhase();
+      assertTrue(phase != LoadState.Phase.LOADING);
+      assertEquals(phase == LoadState.Phase.LOADED, state.getNow() != null);
+    } finally {
+      callers.shutdownNow();
+      completers.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
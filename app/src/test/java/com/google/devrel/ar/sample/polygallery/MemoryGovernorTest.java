@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoryGovernorTest {
+
+  // Each trim level and the highest priority it trims, null for nothing.
+  private static final Object[][] LEVELS = {
+          {0, null},
+          {ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, MemoryGovernor.Priority.THUMBNAILS},
+          {ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, MemoryGovernor.Priority.RENDERABLES},
+          {ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, MemoryGovernor.Priority.METADATA},
+          {ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, MemoryGovernor.Priority.THUMBNAILS},
+          {ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, MemoryGovernor.Priority.THUMBNAILS},
+          {ComponentCallbacks2.TRIM_MEMORY_MODERATE, MemoryGovernor.Priority.RENDERABLES},
+          {ComponentCallbacks2.TRIM_MEMORY_COMPLETE, MemoryGovernor.Priority.METADATA},
+          // Levels added by later platform versions are treated like the next lower one.
+          {ComponentCallbacks2.TRIM_MEMORY_MODERATE + 1, MemoryGovernor.Priority.RENDERABLES},
+          {ComponentCallbacks2.TRIM_MEMORY_COMPLETE + 1, MemoryGovernor.Priority.METADATA},
+  };
+
+  private static final int THUMBNAILS = 10;
+  private static final int THUMBNAILS_ON_SCREEN = 3;
+  private static final int THUMBNAIL_BYTES = 64 * 1024;
+  private static final int RENDERABLES = 4;
+  private static final int PLACED_RENDERABLES = 1;
+  private static final int PREVIEWS = 5;
+
+  // Each trim level and the entries left afterwards: thumbnails, renderables, previews in
+  // memory.
+  private static final int[][] REMAINING = {
+          {0, THUMBNAILS, RENDERABLES, PREVIEWS},
+          {ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                  THUMBNAILS_ON_SCREEN, RENDERABLES, PREVIEWS},
+          {ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                  THUMBNAILS_ON_SCREEN, PLACED_RENDERABLES, PREVIEWS},
+          {ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                  THUMBNAILS_ON_SCREEN, PLACED_RENDERABLES, 0},
+          {ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, THUMBNAILS_ON_SCREEN, RENDERABLES, PREVIEWS},
+          {ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, THUMBNAILS_ON_SCREEN, RENDERABLES, PREVIEWS},
+          {ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                  THUMBNAILS_ON_SCREEN, PLACED_RENDERABLES, PREVIEWS},
+          {ComponentCallbacks2.TRIM_MEMORY_COMPLETE, THUMBNAILS_ON_SCREEN, PLACED_RENDERABLES, 0},
+  };
+
+  // Thumbnails of the gallery, the ones on screen are kept when trimmed.
+  private static class FakeThumbnails implements MemoryGovernor.Trimmable {
+    int count = THUMBNAILS;
+
+    @Override
+    public int getEntryCount() {
+      return count;
+    }
+
+    @Override
+    public long getFootprintBytes() {
+      return (long) count * THUMBNAIL_BYTES;
+    }
+
+    @Override
+    public void trim() {
+      count = Math.min(count, THUMBNAILS_ON_SCREEN);
+    }
+  }
+
+  // Loaded renderables, the placed ones are kept when trimmed.
+  private static class Renderables implements MemoryGovernor.Trimmable {
+    final List<LoadState<String>> states = new ArrayList<>();
+
+    Renderables() {
+      for (int i = 0; i < RENDERABLES; i++) {
+        LoadState<String> state = new LoadState<>(0);
+        String value = "model" + i;
+        state.load(() -> CompletableFuture.completedFuture(value));
+        states.add(state);
+      }
+    }
+
+    @Override
+    public int getEntryCount() {
+      int count = 0;
+      for (LoadState<String> state : states) {
+        if (state.getPhase() == LoadState.Phase.LOADED) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public long getFootprintBytes() {
+      return 0;
+    }
+
+    @Override
+    public void trim() {
+      for (LoadState<String> state : states.subList(PLACED_RENDERABLES, states.size())) {
+        state.evict();
+      }
+    }
+  }
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("previews").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void priorityForEachTrimLevel() {
+    for (Object[] row : LEVELS) {
+      int level = (Integer) row[0];
+      assertEquals("level " + level, row[1], MemoryGovernor.getPriorityForLevel(level));
+    }
+  }
+
+  @Test
+  public void trimLevelsShrinkTheCachesInPriorityOrder() {
+    for (int[] row : REMAINING) {
+      int level = row[0];
+      FakeThumbnails thumbnails = new FakeThumbnails();
+      Renderables renderables = new Renderables();
+      PreviewStore previews = new PreviewStore(dir, 100, Runnable::run);
+      for (int i = 0; i < PREVIEWS; i++) {
+        previews.put("assets/" + i, new byte[] {(byte) i});
+      }
+      MemoryGovernor governor = new MemoryGovernor();
+      governor.register(MemoryGovernor.Priority.METADATA, "previews",
+              new MemoryGovernor.Trimmable() {
+                @Override
+                public int getEntryCount() {
+                  return previews.getLoadedCount();
+                }
+
+                @Override
+                public long getFootprintBytes() {
+                  return previews.getLoadedCount();
+                }
+
+                @Override
+                public void trim() {
+                  previews.trim();
+                }
+              });
+      governor.register(MemoryGovernor.Priority.THUMBNAILS, "thumbnails", thumbnails);
+      governor.register(MemoryGovernor.Priority.RENDERABLES, "renderables", renderables);
+
+      governor.onTrimMemory(level);
+
+      String message = "level " + level;
+      assertEquals(message, row[1], thumbnails.getEntryCount());
+      assertEquals(message, (long) row[1] * THUMBNAIL_BYTES, thumbnails.getFootprintBytes());
+      assertEquals(message, row[2], renderables.getEntryCount());
+      assertEquals(message, LoadState.Phase.LOADED, renderables.states.get(0).getPhase());
+      assertEquals(message, row[3], previews.getLoadedCount());
+      // Trimmed previews stay on disk.
+      assertEquals(message, PREVIEWS, previews.getEntryCount());
+    }
+  }
+
+  @Test
+  public void lowMemoryTrimsEverything() {
+    FakeThumbnails thumbnails = new FakeThumbnails();
+    Renderables renderables = new Renderables();
+    MemoryGovernor governor = new MemoryGovernor();
+    governor.register(MemoryGovernor.Priority.THUMBNAILS, "thumbnails", thumbnails);
+    governor.register(MemoryGovernor.Priority.RENDERABLES, "renderables", renderables);
+    governor.onLowMemory();
+    assertEquals(THUMBNAILS_ON_SCREEN, thumbnails.getEntryCount());
+    assertEquals(PLACED_RENDERABLES, renderables.getEntryCount());
+  }
+}
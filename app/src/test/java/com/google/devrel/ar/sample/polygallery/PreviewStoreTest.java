@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PreviewStoreTest {
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("previews").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  // Runs the disk access right away, so the tests are deterministic.
+  private PreviewStore newStore(int maxEntries) {
+    return new PreviewStore(dir, maxEntries, Runnable::run);
+  }
+
+  private static byte[] value(int i) {
+    return new byte[] {(byte) i, (byte) (i + 1), (byte) (i + 2)};
+  }
+
+  @Test
+  public void storesOneFilePerKey() {
+    PreviewStore store = newStore(10);
+    store.put("assets/a", value(1));
+    store.put("assets/b", value(2));
+    assertArrayEquals(value(1), store.get("assets/a"));
+    assertTrue(store.contains("assets/b"));
+    assertFalse(store.contains("assets/c"));
+    assertNull(store.get("assets/c"));
+    assertEquals(2, dir.listFiles().length);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedOneAtATime() {
+    PreviewStore store = newStore(3);
+    store.put("a", value(1));
+    store.put("b", value(2));
+    store.put("c", value(3));
+    // Using a makes b the least recently used.
+    store.get("a");
+    store.put("d", value(4));
+    assertEquals(3, store.getEntryCount());
+    assertFalse(store.contains("b"));
+    assertTrue(store.contains("a"));
+    assertTrue(store.contains("c"));
+    assertTrue(store.contains("d"));
+    assertEquals(3, dir.listFiles().length);
+  }
+
+  @Test
+  public void loadIndexesEntriesAndReadsValuesOnRequest() {
+    PreviewStore store = newStore(10);
+    store.put("assets/a", value(1));
+    store.put("assets/b", value(2));
+
+    PreviewStore reloaded = newStore(10);
+    reloaded.load();
+    assertEquals(2, reloaded.getEntryCount());
+    assertEquals(0, reloaded.getLoadedCount());
+    assertTrue(reloaded.contains("assets/a"));
+
+    // The first request reads the value, the next one returns it.
+    assertNull(reloaded.get("assets/a"));
+    assertArrayEquals(value(1), reloaded.get("assets/a"));
+    reloaded.preload(Arrays.asList("assets/b", "assets/c"));
+    assertEquals(2, reloaded.getLoadedCount());
+    assertArrayEquals(value(2), reloaded.get("assets/b"));
+  }
+
+  @Test
+  public void entriesStoredBeforeLoadAreKeptAsMostRecent() {
+    PreviewStore store = newStore(10);
+    store.put("old1", value(1));
+    store.put("old2", value(2));
+
+    PreviewStore reloaded = newStore(2);
+    reloaded.put("new", value(3));
+    reloaded.load();
+    assertEquals(2, reloaded.getEntryCount());
+    assertTrue(reloaded.contains("new"));
+    assertArrayEquals(value(3), reloaded.get("new"));
+    assertEquals(1, reloaded.getLoadedCount());
+  }
+
+  @Test
+  public void unreadableEntryIsDropped() throws IOException {
+    assertTrue(new File(dir, "empty").createNewFile());
+    PreviewStore store = newStore(10);
+    store.load();
+    assertTrue(store.contains("empty"));
+    assertNull(store.get("empty"));
+    assertFalse(store.contains("empty"));
+    assertEquals(0, dir.listFiles().length);
+  }
+
+  @Test
+  public void loadEvictsOverLimitAndRemovesPartialWrites() throws IOException {
+    PreviewStore store = newStore(10);
+    for (int i = 0; i < 5; i++) {
+      store.put("k" + i, value(i));
+      new File(dir, "k" + i).setLastModified(1000L * (i + 1));
+    }
+    assertTrue(new File(dir, "~k9").createNewFile());
+
+    PreviewStore reloaded = newStore(3);
+    reloaded.load();
+    assertEquals(3, reloaded.getEntryCount());
+    assertFalse(reloaded.contains("k0"));
+    assertFalse(reloaded.contains("k1"));
+    assertTrue(reloaded.contains("k4"));
+    assertEquals(3, dir.listFiles().length);
+  }
+
+  @Test
+  public void trimDropsValuesFromMemoryOnly() {
+    PreviewStore store = newStore(10);
+    store.put("a", value(1));
+    store.put("b", value(2));
+    store.trim();
+    assertEquals(0, store.getLoadedCount());
+    assertEquals(2, store.getEntryCount());
+    assertTrue(store.contains("a"));
+
+    // The first request reads the value back, the next one returns it.
+    assertNull(store.get("a"));
+    assertEquals(1, store.getLoadedCount());
+    assertArrayEquals(value(1), store.get("a"));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestLimiterTest {
+
+  // Submits requests that record their completion callbacks without running them.
+  private static List<Runnable> submit(RequestLimiter limiter, int count) {
+    List<Runnable> started = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      limiter.submit(started::add);
+    }
+    return started;
+  }
+
+  @Test
+  public void startsQueuedRequestsAsRunningOnesComplete() {
+    RequestLimiter limiter = new RequestLimiter(() -> 2);
+    List<Runnable> started = submit(limiter, 5);
+    assertEquals(2, started.size());
+    started.get(0).run();
+    assertEquals(3, started.size());
+    started.get(1).run();
+    started.get(2).run();
+    assertEquals(5, started.size());
+  }
+
+  @Test
+  public void completionReportedTwiceFreesOneSlot() {
+    RequestLimiter limiter = new RequestLimiter(() -> 2);
+    List<Runnable> started = submit(limiter, 6);
+    assertEquals(2, started.size());
+    // A request failing synchronously and again from the background reports twice.
+    started.get(0).run();
+    started.get(0).run();
+    assertEquals(3, started.size());
+    started.get(1).run();
+    started.get(1).run();
+    started.get(1).run();
+    assertEquals(4, started.size());
+  }
+
+  @Test
+  public void followsChangesOfTheLimit() {
+    int[] limit = {1};
+    RequestLimiter limiter = new RequestLimiter(() -> limit[0]);
+    List<Runnable> started = submit(limiter, 4);
+    assertEquals(1, started.size());
+    limit[0] = 3;
+    started.get(0).run();
+    assertEquals(4, started.size());
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+  // Returns the upper bound of the jitter on every call.
+  private static class MaxRandom extends Random {
+    @Override
+    public double nextDouble() {
+      return Math.nextDown(1.0);
+    }
+  }
+
+  @Test
+  public void transientFailuresAreRetryable() {
+    RetryPolicy policy = RetryPolicy.DEFAULT;
+    assertTrue(policy.isRetryable(0, new IOException()));
+    assertTrue(policy.isRetryable(0, new SocketTimeoutException()));
+    assertTrue(policy.isRetryable(408, null));
+    assertTrue(policy.isRetryable(429, null));
+    assertTrue(policy.isRetryable(500, null));
+    assertTrue(policy.isRetryable(503, null));
+  }
+
+  @Test
+  public void finalFailuresAreNotRetryable() {
+    RetryPolicy policy = RetryPolicy.DEFAULT;
+    assertFalse(policy.isRetryable(0, null));
+    assertFalse(policy.isRetryable(0, new IllegalStateException()));
+    assertFalse(policy.isRetryable(400, null));
+    assertFalse(policy.isRetryable(403, null));
+    assertFalse(policy.isRetryable(404, null));
+  }
+
+  @Test
+  public void backoffDoublesUpToTheCap() {
+    RetryPolicy policy = new RetryPolicy(10, 250, 4000, 30000, new MaxRandom());
+    assertEquals(249, policy.getDelayMillis(1, -1));
+    assertEquals(499, policy.getDelayMillis(2, -1));
+    assertEquals(999, policy.getDelayMillis(3, -1));
+    assertEquals(3999, policy.getDelayMillis(5, -1));
+    assertEquals(3999, policy.getDelayMillis(6, -1));
+    assertEquals(3999, policy.getDelayMillis(64, -1));
+  }
+
+  @Test
+  public void jitterStaysWithinTheCeiling() {
+    RetryPolicy policy = new RetryPolicy(10, 250, 4000, 30000, new Random(42));
+    for (int attempt = 1; attempt <= 8; attempt++) {
+      long ceiling = Math.min(4000, 250L << (attempt - 1));
+      for (int i = 0; i < 100; i++) {
+        long delay = policy.getDelayMillis(attempt, -1);
+        assertTrue(delay >= 0 && delay < ceiling);
+      }
+    }
+  }
+
+  @Test
+  public void retryAfterTakesPrecedenceWithinBudget() {
+    RetryPolicy policy = new RetryPolicy(3, 250, 4000, 30000, new MaxRandom());
+    assertEquals(0, policy.getDelayMillis(1, 0));
+    assertEquals(12000, policy.getDelayMillis(1, 12000));
+    assertEquals(30000, policy.getDelayMillis(2, 30000));
+    assertEquals(-1, policy.getDelayMillis(1, 30001));
+  }
+
+  @Test
+  public void attemptBudgets() {
+    assertEquals(3, RetryPolicy.DEFAULT.getMaxAttempts());
+    assertEquals(1, RetryPolicy.NONE.getMaxAttempts());
+    assertEquals(0, RetryPolicy.NONE.getDelayMillis(1, -1));
+  }
+}
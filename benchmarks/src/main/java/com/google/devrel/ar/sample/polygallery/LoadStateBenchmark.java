@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cost of the compare-and-set transitions of {@link LoadState}, uncontended and with threads
+ * requesting the value while another one evicts it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadStateBenchmark {
+  private static final Supplier<CompletableFuture<String>> LOADER =
+          () -> CompletableFuture.completedFuture("value");
+
+  @State(Scope.Thread)
+  public static class Uncontended {
+    LoadState<String> loaded;
+    LoadState<String> cycled;
+
+    @Setup
+    public void setUp() {
+      loaded = new LoadState<>(0);
+      loaded.load(LOADER);
+      cycled = new LoadState<>(0);
+    }
+  }
+
+  @State(Scope.Group)
+  public static class Shared {
+    LoadState<String> state;
+
+    @Setup
+    public void setUp() {
+      state = new LoadState<>(0);
+    }
+  }
+
+  /** A request for a value that is already loaded, the common case when binding views. */
+  @Benchmark
+  public CompletableFuture<String> loadedHit(Uncontended s) {
+    return s.loaded.load(LOADER);
+  }
+
+  /** A full IDLE, LOADING, LOADED, EVICTED cycle on one thread. */
+  @Benchmark
+  public boolean loadEvictCycle(Uncontended s) {
+    s.cycled.load(LOADER);
+    return s.cycled.evict();
+  }
+
+  /** Requests from three threads while a fourth evicts the value. */
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(3)
+  public CompletableFuture<String> contendedLoad(Shared s) {
+    return s.state.load(LOADER);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public boolean contendedEvict(Shared s) {
+    return s.state.evict();
+  }
+}
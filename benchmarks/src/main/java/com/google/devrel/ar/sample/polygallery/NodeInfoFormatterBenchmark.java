@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of the per-frame node info, compared to the String.format it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodeInfoFormatterBenchmark {
+  private final NodeInfoFormatter formatter = new NodeInfoFormatter('.');
+
+  // Varied per call so the values are not constant folded.
+  private float t;
+
+  @Benchmark
+  public String formatter() {
+    t += 0.001f;
+    return formatter.format(1f + t, 1f + t, 1f + t, 0.52f * t, 1.3f, 0.74f, t, -0.5f, 0.86f);
+  }
+
+  @Benchmark
+  public String stringFormat() {
+    t += 0.001f;
+    return String.format("scale: (%.02f, %.02f, %.02f)\nsize: (%.02f, %.02f, %.02f)\n"
+                    + "dir: (%.02f, %.02f, %.02f)",
+            1f + t, 1f + t, 1f + t, 0.52f * t, 1.3f, 0.74f, t, -0.5f, 0.86f);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.devrel.ar.sample.polygallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the retry decisions.  The default policy shares one Random, so the delay is also
+ * measured with several threads drawing jitter at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RetryPolicyBenchmark {
+  private static final IOException FAILURE = new IOException("reset");
+
+  @Param({"1", "3", "8"})
+  public int attempt;
+
+  @Benchmark
+  public long delay() {
+    return RetryPolicy.DEFAULT.getDelayMillis(attempt, -1);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long delayContended() {
+    return RetryPolicy.DEFAULT.getDelayMillis(attempt, -1);
+  }
+
+  @Benchmark
+  public long retryAfter() {
+    return RetryPolicy.DEFAULT.getDelayMillis(attempt, 2000);
+  }
+
+  @Benchmark
+  public boolean isRetryable() {
+    return RetryPolicy.DEFAULT.isRetryable(0, FAILURE)
+            & RetryPolicy.DEFAULT.isRetryable(503, null)
+            & !RetryPolicy.DEFAULT.isRetryable(404, null);
+  }
+}